@@ -8,6 +8,9 @@ public class Camera
    private int width;
    private int height;
    private Vector screenOrigin;
+   //counts the changes to the camera, so models know when their points have
+   //to be transformed again
+   private int version;
    
    public Camera(int widthIn, int heightIn) {
       width = widthIn;
@@ -18,23 +21,27 @@ public class Camera
       normal = right.cross(down);
       location = new Vector(0, 250, 0);
       screenOrigin = new Vector(width / 2, height / 2);
-      
+      version = 0;
    }
    
    public void setPerspectivePoint(int distance) {
       perspectivePoint = distance;
+      version++;
    }
    
    public void setLocation(Vector locationIn) {
       location = locationIn;
+      version++;
    }
    
    public void setDown(Vector downIn) {
       down = downIn;
+      version++;
    }
    
    public void setRight(Vector rightIn) {
       right = rightIn;
+      version++;
    }
    
    public Vector traceToCamera(Vector pointIn) {
@@ -44,6 +51,42 @@ public class Camera
       return new Vector(x, y, pointIn.getZD());
    }
    
+   /**
+       Returns a number that changes whenever the camera is moved or turned with
+       its setters. The vectors given to the setters are kept, so changing them
+       afterwards without setting them again isn't noticed.
+   */
+   public int getVersion() {
+      return version;
+   }
+   
+   public double getPerspectivePoint() {
+      return perspectivePoint;
+   }
+   
+   public Vector getScreenOrigin() {
+      return screenOrigin;
+   }
+   
+   /**
+       Returns the matrix that moves world coordinates into coordinates relative
+       to the camera, with x to the right, y down and z along the camera normal.
+   */
+   public Matrix4x4 getViewMatrix() {
+      Matrix3x3 transformToScreen = new Matrix3x3(getRight(), getDown(), getNormal());
+      transformToScreen = transformToScreen.getTranspose().invert();
+      
+      return (new Matrix4x4(transformToScreen)).multiply(Matrix4x4.translate(location.scale(-1)));
+   }
+   
+   /**
+       Returns the matrix that performs traceToCamera and originOffset on points
+       relative to the camera.
+   */
+   public Matrix4x4 getProjectionMatrix() {
+      return Matrix4x4.perspective(perspectivePoint, screenOrigin);
+   }
+   
    public Vector getNormal() {
       normal = right.cross(down);
       return normal;
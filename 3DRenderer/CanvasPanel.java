@@ -1,34 +1,59 @@
-import javax.swing.JPanel;
 import javax.swing.Timer;
+import java.awt.Canvas;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Color;
-import java.awt.AlphaComposite;
+import java.awt.Font;
+import java.awt.DisplayMode;
+import java.awt.Toolkit;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
-import java.io.File;
-import java.io.IOException;
-import java.util.Scanner;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
-public class CanvasPanel extends JPanel implements ActionListener
+/**
+    Draws the orbit scene on its own render thread. Frames are drawn straight
+    into the back buffer of a BufferStrategy and shown as soon as they're done,
+    instead of asking Swing to repaint, so the frame rate is what the renderer
+    manages rather than what the repaint timer allows. Frames can be capped to
+    a rate, which paces them evenly like vsync would.
+    
+    The times of the stages of drawing recorded by the profiler of the render
+    context can be shown over the frame.
+    
+    The scene and render context are only used by the render thread. Changes
+    made from other threads, like the settings of the window, should be passed
+    to runOnRenderThread, which runs them before the next frame.
+*/
+public class CanvasPanel extends Canvas implements ActionListener, Runnable
 {
-   private Timer clock, updateFps, output;
-   private double count = 0;
-   private Model satelite, earth;
+   //buffers of the strategy, which falls back to fewer if it can't have three
+   private static final int BUFFERS = 3;
+   
+   private Timer updateFps, output;
+   private OrbitScene scene;
    private Camera cam;
-   private Vector position;
-   private Vector[] earthSystem;
-   private AlphaComposite composite;
+   private RenderContext context;
    private long currentTime, lastTime;
    private int fps, maxFps, minFps;
    private int[] avgFps;
    private int fpsIndex;
    private ProjectionWindow parent;
-  
+   private Thread renderThread;
+   private volatile boolean running;
+   private volatile int frameCap;
+   private volatile boolean overlay;
+   private Font overlayFont;
+   private ConcurrentLinkedQueue<Runnable> tasks;
+   
    public CanvasPanel(ProjectionWindow parentIn) {
       parent = parentIn;
       
       setBackground(Color.BLACK);
+      //everything is drawn by the render thread
+      setIgnoreRepaint(true);
+      setFocusable(false);
       
       fps = 100000;
       maxFps = 0;
@@ -40,39 +65,32 @@ public class CanvasPanel extends JPanel implements ActionListener
       currentTime = 0;
       lastTime = 0;
       
-      clock = new Timer(1000 / fps, this);
-      clock.setCoalesce(true);
       updateFps = new Timer(150, parent);
       updateFps.setActionCommand("fps timer");
       output = new Timer(5000, this);
       //output.start();
       
-      satelite = new Model();
-      earth = new Model();
-      position = new Vector(0, 400, 0);
+      renderThread = null;
+      running = false;
+      frameCap = 0;
+      overlay = false;
+      overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+      tasks = new ConcurrentLinkedQueue<Runnable>();
       
-      int inclination = 20;
-      
-      earthSystem = new Vector[3];
-      earthSystem[1] = new Vector(0, 1, 0);
-      earthSystem[2] = (new Vector(Math.sin(inclination * Matrix3x3.TORAD), 0, Math.cos(inclination * Matrix3x3.TORAD))).normalize();
-      earthSystem[0] = earthSystem[1].cross(earthSystem[2]);
+      scene = new OrbitScene();
    }
    
+   /**
+       Does nothing, the render thread draws every frame anyway.
+   */
    public void paint(Graphics g) {
-      super.paint(g);
-      Graphics2D g2D = (Graphics2D) g;
-      
-      earth.setDrawStack();
-      satelite.setDrawStack();
-      Surface.drawAll(g2D);
    }
-  
+   
+   public void update(Graphics g) {
+   }
+   
    public void actionPerformed(ActionEvent event) {
-      if (event.getSource() == clock){
-         step();
-      } 
-      else if (event.getSource() == output) {
+      if (event.getSource() == output) {
          /*
          double avg = 0;
          for (int i = 0; i < avgFps.length; i++) {
@@ -89,69 +107,226 @@ public class CanvasPanel extends JPanel implements ActionListener
       }
    }
    
+   /**
+       The render loop. Draws and steps the scene until stopped, waiting between
+       frames when they're capped.
+   */
+   public void run() {
+      BufferStrategy strategy = getBufferStrategy();
+      long deadline = System.nanoTime();
+      lastTime = deadline;
+      while (running) {
+         Runnable task = tasks.poll();
+         while (task != null) {
+            task.run();
+            task = tasks.poll();
+         }
+         
+         render(strategy);
+         scene.step(60 / (double)fps);
+         
+         int cap = frameCap;
+         if (cap > 0) {
+            long frameLength = 1000000000L / cap;
+            deadline += frameLength;
+            waitUntil(deadline);
+            //a frame that ran over doesn't make the next ones hurry to catch up
+            if (System.nanoTime() - deadline > frameLength) {
+               deadline = System.nanoTime();
+            }
+         }
+         else {
+            deadline = System.nanoTime();
+         }
+         step();
+      }
+   }
+   
+   /**
+       Draws a frame into the back buffer and shows it. The frame is drawn again
+       if the buffer was restored while it was drawn, and drawn and shown again
+       if the buffer was lost by the time it was shown.
+   */
+   private void render(BufferStrategy strategy) {
+      do {
+         do {
+            //drawing the frame empties the draw stack, so it's filled again
+            //each time the frame is drawn
+            scene.setDrawStack(context);
+            Graphics2D g2D = (Graphics2D)strategy.getDrawGraphics();
+            try {
+               //the back buffer isn't kept from one frame to the next, so unlike
+               //the image of the HeadlessRenderer all of it is filled every
+               //frame, and only the drawn part of the frame is copied
+               g2D.setColor(getBackground());
+               g2D.fillRect(0, 0, getWidth(), getHeight());
+               Surface.drawAll(context, g2D);
+               if (overlay) {
+                  drawOverlay(g2D);
+               }
+            }
+            finally {
+               g2D.dispose();
+            }
+         } while (strategy.contentsRestored());
+         strategy.show();
+         //pushes the frame to the screen now on systems that buffer drawing
+         Toolkit.getDefaultToolkit().sync();
+      } while (strategy.contentsLost());
+   }
+   
+   /**
+       Draws the 50th, 99th and 99.9th percentile and the longest time of each
+       stage of drawing in the upper left corner, in milliseconds.
+   */
+   private void drawOverlay(Graphics2D g2D) {
+      FrameProfiler profiler = context.getProfiler();
+      g2D.setFont(overlayFont);
+      g2D.setColor(context.isWireframe() ? Color.BLACK : Color.WHITE);
+      int lineHeight = g2D.getFontMetrics().getHeight();
+      int y = lineHeight;
+      g2D.drawString(String.format("%-10s %7s %7s %7s %7s", "ms", "p50", "p99", "p99.9", "max"), 8, y);
+      for (int i = 0; i < profiler.getNumbStages(); i++) {
+         LatencyHistogram h = profiler.getHistogram(i);
+         y += lineHeight;
+         g2D.drawString(String.format("%-10s %7.3f %7.3f %7.3f %7.3f", profiler.getStageName(i),
+                                      h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6,
+                                      h.getPercentile(99.9) / 1e6, h.getMax() / 1e6), 8, y);
+      }
+   }
+   
+   /**
+       Parks the render thread until the given time, yielding instead for the
+       last couple of milliseconds since parking can oversleep by about that much.
+   */
+   private void waitUntil(long time) {
+      long remaining = time - System.nanoTime();
+      while (remaining > 0) {
+         if (remaining > 2000000) {
+            LockSupport.parkNanos(remaining - 2000000);
+         }
+         else {
+            Thread.yield();
+         }
+         remaining = time - System.nanoTime();
+      }
+   }
+   
+   /**
+       Measures the frame just finished. The time includes drawing, showing and
+       waiting for the cap, so the rate is the one actually seen on the screen.
+   */
    private void step() {
-      repaint();
-      satelite.addYRotation(count * 1.5);
-      satelite.addZRotation(count * 1);
-      earth.addZRotation(-0.25 * count);
-      
-      Matrix3x3 rotate = Matrix3x3.rotateZ(count * 1.5);
-      
-      Matrix3x3 transform = new Matrix3x3(earthSystem[0], earthSystem[1], earthSystem[2]);
-      transform = transform.getTranspose();
-      
-      satelite.setPosition(transform.multiply(rotate.multiply(position)));
-      //Surface.setLightSource(satelite.getPosition());
-      
-      count += (60 / (double)fps);
-      
       currentTime = System.nanoTime();
-      fps = (int)(1000000000 / (currentTime - lastTime));
+      fps = (int)(1000000000 / Math.max(1, currentTime - lastTime));
       
       if (fps > maxFps) {
          maxFps = fps;
-      } 
+      }
       else if (fps < minFps){
          minFps = fps;
       }
       
       avgFps[fpsIndex] = fps;
-      fpsIndex++; 
+      fpsIndex++;
       if (fpsIndex == avgFps.length) {
          fpsIndex = 0;
       }
       
-      lastTime = System.nanoTime();
-      //clock.stop();
+      lastTime = currentTime;
    }
    
+   /**
+       Loads the scene and starts the render thread. The canvas has to be showing
+       so the buffers can be made.
+   */
    public void load() {
-      clock.stop();
+      stop();
       updateFps.stop();
-      satelite = new Model(cam);
-      satelite.setPosition(position);
-      satelite.readFile("input\\rocket5.dat");
-      satelite.scale(0.125);
-      earth = new Model(cam);
-      earth.readFile("input\\sphereGen2.dat");
-      //earth.setCoordinateSystem(new Vector(0, 1, 0), new Vector(0, 0, 1), new Vector(1, 0, 0));
-      
-      Vector xAxis = satelite.getPosition().normalize().scale(-1);
-      Vector yAxis = earthSystem[2];
-          
-      satelite.setCoordinateSystem(xAxis, yAxis, xAxis.cross(yAxis));
-      //satelite.isLightingCorrected(false);
-      //Surface.setLightSource(satelite.getPosition());
-      lastTime = System.nanoTime();
-      clock.start();
+      scene.load(cam, "input");
+      createBufferStrategy(BUFFERS);
+      running = true;
+      renderThread = new Thread(this, "Render");
+      renderThread.setDaemon(true);
+      renderThread.start();
       updateFps.start();
    }
    
-   public void setCamera(Camera newCam) {
-      cam = newCam;
-      satelite.setCamera(cam);
-      earth.setCamera(cam);
-      Surface.setCamera(cam);
+   /**
+       Stops the render thread and waits for the frame it's drawing to finish.
+   */
+   public void stop() {
+      running = false;
+      if ((renderThread != null) && (renderThread != Thread.currentThread())) {
+         try {
+            renderThread.join();
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      renderThread = null;
+   }
+   
+   public void removeNotify() {
+      stop();
+      super.removeNotify();
+   }
+   
+   /**
+       Runs the given task on the render thread before the next frame, so it can
+       change the scene or render context without racing the frame being drawn.
+   */
+   public void runOnRenderThread(Runnable task) {
+      tasks.add(task);
+   }
+   
+   /**
+       Caps the frame rate to the given number of frames per second, or removes
+       the cap if it's 0 or less.
+   */
+   public void setFrameCap(int framesPerSecond) {
+      frameCap = Math.max(0, framesPerSecond);
+   }
+   
+   public int getFrameCap() {
+      return frameCap;
+   }
+   
+   /**
+       Switch for drawing the times recorded by the profiler of the render context
+       over the frame. The profiler itself has to be enabled for there to be any.
+   */
+   public void setOverlay(boolean state) {
+      overlay = state;
+   }
+   
+   /**
+       Returns the refresh rate of the screen the canvas is on, or 60 if it isn't
+       known, for capping the frames to the screen.
+   */
+   public int getRefreshRate() {
+      DisplayMode mode = getGraphicsConfiguration().getDevice().getDisplayMode();
+      if ((mode == null) || (mode.getRefreshRate() == DisplayMode.REFRESH_RATE_UNKNOWN)) {
+         return 60;
+      }
+      return mode.getRefreshRate();
+   }
+   
+   /**
+       Sets the context the scene is drawn with, including its camera.
+   */
+   public void setRenderContext(RenderContext newContext) {
+      context = newContext;
+      cam = context.getCamera();
+      scene.setCamera(cam);
+   }
+   
+   /**
+       Returns the scene, which should only be changed on the render thread.
+   */
+   public OrbitScene getScene() {
+      return scene;
    }
    
    public Timer getFPSUpdater() {
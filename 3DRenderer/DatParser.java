@@ -0,0 +1,344 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+    This class reads the text .dat model files. The file is read through a byte
+    buffer in one pass and the numbers are parsed by hand, so no Strings are
+    created for the lines or values.
+    
+    A .dat file has three sections separated by blank lines. The first has one
+    point per line as x, y and z coordinates. The second has one surface per line
+    as the indices of its points, and the optional third has one color per line
+    as red, green and blue values from 0 to 255, in the same order as the
+    surfaces. Values are separated by commas and spaces. Malformed input is
+    reported with a MeshFormatException naming the file and line.
+*/
+public class DatParser
+{
+   private static final int BUFFER_SIZE = 1 << 16;
+   
+   //powers of ten that are exactly representable as doubles
+   private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+   
+   private String fileName;
+   private InputStream in;
+   private byte[] buffer;
+   private int position;
+   private int limit;
+   private int line;
+   
+   //characters of the value being parsed
+   private byte[] token;
+   private int tokenLength;
+   
+   private double[] x, y, z;
+   private int numbPoints;
+   private int[] offsets;
+   private int numbSurfaces;
+   private int[] indices;
+   private int numbIndices;
+   private int[] colors;
+   
+   private DatParser(String fileNameIn, InputStream inIn) {
+      fileName = fileNameIn;
+      in = inIn;
+      buffer = new byte[BUFFER_SIZE];
+      position = 0;
+      limit = 0;
+      line = 1;
+      token = new byte[32];
+      tokenLength = 0;
+      
+      x = new double[64];
+      y = new double[64];
+      z = new double[64];
+      numbPoints = 0;
+      offsets = new int[65];
+      numbSurfaces = 0;
+      indices = new int[256];
+      numbIndices = 0;
+   }
+   
+   /**
+       Loads the mesh in the given .dat file.
+       @param fileName String path of the .dat file
+       @return Mesh the points, surfaces and colors of the file
+       @throws MeshFormatException if the contents of the file are malformed
+       @throws IOException if the file can't be read
+   */
+   public static Mesh read(String fileName) throws IOException {
+      InputStream in = new FileInputStream(fileName);
+      try {
+         DatParser parser = new DatParser(fileName, in);
+         parser.parse();
+         return new Mesh(parser.x, parser.y, parser.z, parser.numbPoints, parser.offsets,
+                         parser.indices, parser.colors, parser.numbSurfaces);
+      }
+      finally {
+         in.close();
+      }
+   }
+   
+   private void parse() throws IOException {
+      //reads in the points
+      while (nextValue(true)) {
+         if (numbPoints == x.length) {
+            x = Arrays.copyOf(x, numbPoints * 2);
+            y = Arrays.copyOf(y, numbPoints * 2);
+            z = Arrays.copyOf(z, numbPoints * 2);
+         }
+         x[numbPoints] = readDouble();
+         y[numbPoints] = readCoordinate(1);
+         z[numbPoints] = readCoordinate(2);
+         if (nextValue(false)) {
+            throw error("expected 3 coordinates but found more");
+         }
+         numbPoints++;
+         endLine();
+      }
+      endLine();
+      
+      //reads in the surfaces
+      while (nextValue(true)) {
+         if (numbSurfaces + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+         }
+         int count = 0;
+         do {
+            int index = readInt();
+            if ((index < 0) || (index >= numbPoints)) {
+               throw error("point index " + index + " out of range, the file has " + numbPoints + " points");
+            }
+            if (numbIndices == indices.length) {
+               indices = Arrays.copyOf(indices, numbIndices * 2);
+            }
+            indices[numbIndices] = index;
+            numbIndices++;
+            count++;
+         } while (nextValue(false));
+         if (count < 3) {
+            throw error("a surface needs at least 3 points but found " + count);
+         }
+         numbSurfaces++;
+         offsets[numbSurfaces] = numbIndices;
+         endLine();
+      }
+      endLine();
+      
+      //reads in the colors, surfaces without one stay white
+      colors = new int[numbSurfaces];
+      Arrays.fill(colors, 0xFFFFFF);
+      for (int i = 0; (i < numbSurfaces) && nextValue(true); i++) {
+         int red = readColorComponent(false);
+         int green = readColorComponent(true);
+         int blue = readColorComponent(true);
+         if (nextValue(false)) {
+            throw error("expected 3 color values but found more");
+         }
+         colors[i] = (red << 16) | (green << 8) | blue;
+         endLine();
+      }
+   }
+   
+   private double readCoordinate(int found) throws IOException {
+      if (!nextValue(false)) {
+         throw error("expected 3 coordinates but found " + found);
+      }
+      return readDouble();
+   }
+   
+   private int readColorComponent(boolean needsValue) throws IOException {
+      if (needsValue && !nextValue(false)) {
+         throw error("expected red, green and blue values");
+      }
+      int value = readInt();
+      if ((value < 0) || (value > 255)) {
+         throw error("color value " + value + " is outside of 0 to 255");
+      }
+      return value;
+   }
+   
+   /**
+       Returns the next byte without consuming it, or -1 at the end of the file.
+   */
+   private int peek() throws IOException {
+      if (position == limit) {
+         limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+         position = 0;
+         if (limit == 0) {
+            return -1;
+         }
+      }
+      return buffer[position];
+   }
+   
+   /**
+       Skips the spaces and comma in front of the next value. Returns false if the
+       line ends instead, leaving the line ending to be consumed by endLine.
+       @param first boolean whether the value would be the first of its line
+   */
+   private boolean nextValue(boolean first) throws IOException {
+      boolean comma = first;
+      while (true) {
+         int c = peek();
+         if ((c == ' ') || (c == '\t')) {
+            position++;
+         }
+         else if (c == ',') {
+            if (comma) {
+               throw error("missing value before ','");
+            }
+            comma = true;
+            position++;
+         }
+         else if ((c == '\r') || (c == '\n') || (c == -1)) {
+            if (comma && !first) {
+               throw error("missing value after ','");
+            }
+            return false;
+         }
+         else {
+            return true;
+         }
+      }
+   }
+   
+   /**
+       Consumes the line ending at the current position, if there is one.
+   */
+   private void endLine() throws IOException {
+      int c = peek();
+      if (c == '\r') {
+         position++;
+         c = peek();
+      }
+      if (c == '\n') {
+         position++;
+      }
+      line++;
+   }
+   
+   /**
+       Copies the characters of the next value into the token array.
+   */
+   private void readToken() throws IOException {
+      tokenLength = 0;
+      while (true) {
+         int c = peek();
+         if (((c >= '0') && (c <= '9')) || (c == '.') || (c == '-') || (c == '+') || (c == 'e') || (c == 'E')) {
+            if (tokenLength == token.length) {
+               token = Arrays.copyOf(token, tokenLength * 2);
+            }
+            token[tokenLength] = (byte)c;
+            tokenLength++;
+            position++;
+         }
+         else if ((c == ' ') || (c == '\t') || (c == ',') || (c == '\r') || (c == '\n') || (c == -1)) {
+            break;
+         }
+         else {
+            throw error("unexpected character '" + (char)c + "'");
+         }
+      }
+   }
+   
+   private double readDouble() throws IOException {
+      readToken();
+      int i = 0;
+      boolean negative = false;
+      if ((i < tokenLength) && ((token[i] == '-') || (token[i] == '+'))) {
+         negative = token[i] == '-';
+         i++;
+      }
+      
+      long mantissa = 0;
+      int exponent = 0;
+      int digits = 0;
+      boolean exact = true;
+      boolean point = false;
+      for (; i < tokenLength; i++) {
+         int c = token[i];
+         if ((c >= '0') && (c <= '9')) {
+            if (mantissa < (1L << 53) / 10) {
+               mantissa = (mantissa * 10) + (c - '0');
+               if (point) {
+                  exponent--;
+               }
+            }
+            else {
+               exact = false;
+            }
+            digits++;
+         }
+         else if ((c == '.') && !point) {
+            point = true;
+         }
+         else {
+            break;
+         }
+      }
+      if (digits == 0) {
+         throw error("invalid number '" + tokenText() + "'");
+      }
+      
+      //a mantissa and power of ten that are both exact give a correctly
+      //rounded result with a single multiplication or division. Anything
+      //else, including exponents, is left to Double.parseDouble.
+      if (exact && (i == tokenLength) && (exponent >= -22)) {
+         double value = mantissa / POWERS_OF_TEN[-exponent];
+         return negative ? -value : value;
+      }
+      try {
+         return Double.parseDouble(tokenText());
+      }
+      catch (NumberFormatException e) {
+         throw error("invalid number '" + tokenText() + "'");
+      }
+   }
+   
+   private int readInt() throws IOException {
+      readToken();
+      int i = 0;
+      boolean negative = false;
+      if ((i < tokenLength) && ((token[i] == '-') || (token[i] == '+'))) {
+         negative = token[i] == '-';
+         i++;
+      }
+      if (i == tokenLength) {
+         throw error("invalid integer '" + tokenText() + "'");
+      }
+      
+      long value = 0;
+      for (; i < tokenLength; i++) {
+         int c = token[i];
+         if ((c < '0') || (c > '9')) {
+            throw error("invalid integer '" + tokenText() + "'");
+         }
+         value = (value * 10) + (c - '0');
+         if (value > Integer.MAX_VALUE + 1L) {
+            throw error("integer '" + tokenText() + "' is too large");
+         }
+      }
+      if (negative) {
+         value = -value;
+      }
+      if (value > Integer.MAX_VALUE) {
+         throw error("integer '" + tokenText() + "' is too large");
+      }
+      return (int)value;
+   }
+   
+   private String tokenText() {
+      return new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+   }
+   
+   private MeshFormatException error(String message) {
+      return new MeshFormatException(fileName, line, message);
+   }
+}
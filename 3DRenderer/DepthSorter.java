@@ -0,0 +1,267 @@
+/**
+    This class collects the visible surfaces of a frame together with their depth
+    and sorts them once from closest to farthest. The depths are stored as the
+    bits of a float, flipped so they compare correctly as unsigned integers, and
+    sorted with a radix sort.
+    
+    With warm start enabled the order of the previous frame is used as a starting
+    point, and the surfaces are put in order with an insertion sort. When the scene
+    changes little between frames this is close to linear. If too many surfaces
+    moved the sorter falls back to the radix sort.
+*/
+public class DepthSorter
+{
+   private Surface[] surfaces;
+   private int[] keys;
+   private int[] order;
+   private int[] tempKeys;
+   private int[] tempOrder;
+   private Surface[] sorted;
+   private int count;
+   private int[] counts;
+   private boolean warmStart;
+   private int previousCount;
+   private int frame;
+   
+   //the number of element moves per surface allowed before the insertion sort
+   //of a warm start gives up and the radix sort is used instead.
+   private static final int MAX_MOVES_PER_SURFACE = 8;
+   
+   public DepthSorter() {
+      surfaces = new Surface[50];
+      keys = new int[50];
+      order = new int[50];
+      tempKeys = new int[50];
+      tempOrder = new int[50];
+      sorted = new Surface[50];
+      counts = new int[256];
+      count = 0;
+      previousCount = 0;
+      frame = 1;
+      warmStart = false;
+   }
+   
+   /**
+       Sets whether the order of the previous frame is used as the starting
+       point of the sort.
+   */
+   public void setWarmStart(boolean state) {
+      warmStart = state;
+   }
+   
+   public boolean isWarmStart() {
+      return warmStart;
+   }
+   
+   /**
+       Adds a surface with the given depth to the current frame.
+   */
+   public void add(Surface surface, double depth) {
+      if (count == surfaces.length) {
+         grow(count * 2);
+      }
+      int bits = Float.floatToRawIntBits((float)depth);
+      //flips all bits of negative numbers and only the sign bit of positive
+      //numbers, so the order of the bits matches the order of the floats.
+      keys[count] = bits ^ ((bits >> 31) | 0x80000000);
+      surfaces[count] = surface;
+      count++;
+   }
+   
+   public int size() {
+      return count;
+   }
+   
+   /**
+       Returns the surfaces added this frame. After sort is called they are in
+       order from closest to farthest.
+   */
+   public Surface[] getSurfaces() {
+      return surfaces;
+   }
+   
+   /**
+       Sorts the surfaces added since the last call to clear.
+   */
+   public void sort() {
+      if (count == 0) {
+         previousCount = 0;
+         return;
+      }
+      if (warmStart && (previousCount > 0)) {
+         arrangeByPreviousOrder();
+         if (!insertionSort()) {
+            radixSort();
+         }
+      }
+      else {
+         radixSort();
+      }
+      
+      if (warmStart) {
+         rememberOrder();
+      }
+   }
+   
+   /**
+       Removes all surfaces so the next frame can be collected.
+   */
+   public void clear() {
+      for (int i = 0; i < count; i++) {
+         surfaces[i] = null;
+      }
+      count = 0;
+      frame++;
+   }
+   
+   private void grow(int capacity) {
+      Surface[] temp = surfaces;
+      surfaces = new Surface[capacity];
+      System.arraycopy(temp, 0, surfaces, 0, count);
+      int[] tempInts = keys;
+      keys = new int[capacity];
+      System.arraycopy(tempInts, 0, keys, 0, count);
+      order = new int[capacity];
+      tempKeys = new int[capacity];
+      tempOrder = new int[capacity];
+      sorted = new Surface[capacity];
+   }
+   
+   /**
+       Least significant digit radix sort on the keys, one byte per pass. Passes
+       where every key has the same byte are skipped.
+   */
+   private void radixSort() {
+      for (int i = 0; i < count; i++) {
+         order[i] = i;
+      }
+      
+      int[] fromKeys = keys;
+      int[] fromOrder = order;
+      int[] toKeys = tempKeys;
+      int[] toOrder = tempOrder;
+      
+      for (int shift = 0; shift < 32; shift += 8) {
+         for (int i = 0; i < 256; i++) {
+            counts[i] = 0;
+         }
+         for (int i = 0; i < count; i++) {
+            counts[(fromKeys[i] >>> shift) & 0xFF]++;
+         }
+         if (counts[(fromKeys[0] >>> shift) & 0xFF] == count) {
+            continue;
+         }
+         
+         int total = 0;
+         for (int i = 0; i < 256; i++) {
+            int c = counts[i];
+            counts[i] = total;
+            total += c;
+         }
+         for (int i = 0; i < count; i++) {
+            int destination = counts[(fromKeys[i] >>> shift) & 0xFF]++;
+            toKeys[destination] = fromKeys[i];
+            toOrder[destination] = fromOrder[i];
+         }
+         
+         int[] swap = fromKeys;
+         fromKeys = toKeys;
+         toKeys = swap;
+         swap = fromOrder;
+         fromOrder = toOrder;
+         toOrder = swap;
+      }
+      
+      for (int i = 0; i < count; i++) {
+         sorted[i] = surfaces[fromOrder[i]];
+      }
+      
+      Surface[] swapSurfaces = surfaces;
+      surfaces = sorted;
+      sorted = swapSurfaces;
+      keys = fromKeys;
+      tempKeys = toKeys;
+      order = fromOrder;
+      tempOrder = toOrder;
+   }
+   
+   /**
+       Puts the surfaces that were drawn last frame in the order they were drawn
+       in, followed by the newly visible surfaces.
+   */
+   private void arrangeByPreviousOrder() {
+      //each surface sorted last frame remembers its position, so the previous
+      //order is rebuilt by dropping the surfaces into those positions.
+      Surface[] slots = sorted;
+      int[] slotKeys = tempKeys;
+      for (int i = 0; i < previousCount; i++) {
+         slots[i] = null;
+      }
+      
+      int newCount = 0;
+      for (int i = 0; i < count; i++) {
+         Surface s = surfaces[i];
+         int position = s.sortPosition;
+         if ((s.sortFrame == frame - 1) && (position < previousCount) && (slots[position] == null)) {
+            slots[position] = s;
+            slotKeys[position] = keys[i];
+         }
+         else {
+            order[newCount] = i;
+            newCount++;
+         }
+      }
+      
+      //moves the new surfaces to the end, starting with the last one so that
+      //none of them are overwritten before they are moved.
+      for (int i = newCount - 1; i >= 0; i--) {
+         int destination = count - newCount + i;
+         surfaces[destination] = surfaces[order[i]];
+         keys[destination] = keys[order[i]];
+      }
+      
+      int position = 0;
+      for (int i = 0; i < previousCount; i++) {
+         if (slots[i] != null) {
+            surfaces[position] = slots[i];
+            keys[position] = slotKeys[i];
+            slots[i] = null;
+            position++;
+         }
+      }
+   }
+   
+   /**
+       Insertion sort of the keys, which is fast when the surfaces are nearly in
+       order already. Returns false if it gave up because too many surfaces had
+       to be moved.
+   */
+   private boolean insertionSort() {
+      long movesLeft = (long)count * MAX_MOVES_PER_SURFACE;
+      for (int i = 1; i < count; i++) {
+         int key = keys[i];
+         Surface s = surfaces[i];
+         int j = i - 1;
+         while ((j >= 0) && (Integer.compareUnsigned(keys[j], key) > 0)) {
+            keys[j + 1] = keys[j];
+            surfaces[j + 1] = surfaces[j];
+            j--;
+            movesLeft--;
+         }
+         keys[j + 1] = key;
+         surfaces[j + 1] = s;
+         if (movesLeft < 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+   
+   private void rememberOrder() {
+      for (int i = 0; i < count; i++) {
+         surfaces[i].sortFrame = frame;
+         surfaces[i].sortPosition = i;
+      }
+      previousCount = count;
+   }
+}
@@ -0,0 +1,117 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+    This class keeps the image the Java2D mode draws each frame into, so it isn't
+    made again every frame. It remembers the part of the image drawn in the last
+    frame, which is the only part that has to be cleared for the next one, and
+    the part drawn in this frame, which is the only part that has to be copied
+    to the screen. Everything else in the image is always transparent.
+    
+    A graphics the frame is copied onto that keeps its pixels, like the image
+    of the HeadlessRenderer, is only cleared over the parts drawn in the last
+    frame and this one, see RenderContext.setTargetBackground. A screen's back
+    buffer doesn't keep them, so its whole area is still filled every frame.
+*/
+public class FrameBuffer
+{
+   private BufferedImage image;
+   private int[] pixels;
+   private Graphics2D graphics;
+   private int width;
+   private int height;
+   //bounds of the pixels drawn since the last clear, inclusive, empty when the
+   //minimum is larger than the maximum
+   private int minX, minY, maxX, maxY;
+   
+   public FrameBuffer(int widthIn, int heightIn) {
+      setSize(widthIn, heightIn);
+   }
+   
+   /**
+       Resizes the image. Nothing is reallocated if the size hasn't changed.
+   */
+   public void setSize(int widthIn, int heightIn) {
+      if ((image != null) && (widthIn == width) && (heightIn == height)) {
+         return;
+      }
+      width = widthIn;
+      height = heightIn;
+      if (graphics != null) {
+         graphics.dispose();
+      }
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      graphics = image.createGraphics();
+      //surfaces are drawn from the nearest, each one going behind what's there
+      graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER));
+      resetBounds();
+   }
+   
+   /**
+       Clears the pixels drawn since the last clear back to transparent.
+   */
+   public void clear() {
+      for (int j = minY; j <= maxY; j++) {
+         int row = j * width;
+         for (int i = row + minX; i <= row + maxX; i++) {
+            pixels[i] = 0;
+         }
+      }
+      resetBounds();
+   }
+   
+   private void resetBounds() {
+      minX = width;
+      minY = height;
+      maxX = -1;
+      maxY = -1;
+   }
+   
+   /**
+       Adds screen bounds given as minimum x, minimum y, maximum x and maximum y to
+       the part of the image drawn this frame. A pixel is added around them for
+       the outlines drawn over the edges in wire frame.
+   */
+   public void addDrawnBounds(double[] bounds) {
+      minX = Math.min(minX, Math.max(0, (int)Math.floor(bounds[0]) - 1));
+      minY = Math.min(minY, Math.max(0, (int)Math.floor(bounds[1]) - 1));
+      maxX = Math.max(maxX, Math.min(width - 1, (int)Math.ceil(bounds[2]) + 1));
+      maxY = Math.max(maxY, Math.min(height - 1, (int)Math.ceil(bounds[3]) + 1));
+   }
+   
+   /**
+       Stores the bounds of the pixels drawn since the last clear as minimum x,
+       minimum y, maximum x and maximum y, all inclusive, in the given array.
+       @return boolean false if nothing was drawn
+   */
+   public boolean getDrawnBounds(int[] bounds) {
+      bounds[0] = minX;
+      bounds[1] = minY;
+      bounds[2] = maxX;
+      bounds[3] = maxY;
+      return (minX <= maxX) && (minY <= maxY);
+   }
+   
+   /**
+       Returns the graphics the surfaces are drawn with, which puts each surface
+       behind what was already drawn.
+   */
+   public Graphics2D getGraphics() {
+      return graphics;
+   }
+   
+   public BufferedImage getImage() {
+      return image;
+   }
+   
+   public int getWidth() {
+      return width;
+   }
+   
+   public int getHeight() {
+      return height;
+   }
+}
@@ -0,0 +1,66 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+    Flight recorder event spanning one frame drawn with a RenderContext, from the
+    end of the frame before it to the end of this one, with the size of the scene
+    and the time of each stage. Recorded by the FrameProfiler.
+*/
+@Name("renderer.Frame")
+@Label("Frame")
+@Category("Renderer")
+@Description("A frame drawn by the renderer")
+@StackTrace(false)
+public class FrameEvent extends jdk.jfr.Event
+{
+   @Label("Frame")
+   @Description("Number of the frame since the context was made")
+   long frame;
+   
+   @Label("Models")
+   @Description("Models in view of the camera")
+   int models;
+   
+   @Label("Faces")
+   @Description("Surfaces of the models in view, at the level of detail drawn")
+   int faces;
+   
+   @Label("Visible Surfaces")
+   @Description("Surfaces added to the draw stack")
+   int visibleSurfaces;
+   
+   @Label("Vertices")
+   @Description("Points of the models in view, at the level of detail drawn")
+   int vertices;
+   
+   @Label("Lights")
+   int lights;
+   
+   @Label("Transform")
+   @Timespan(Timespan.NANOSECONDS)
+   long transform;
+   
+   @Label("Visibility")
+   @Timespan(Timespan.NANOSECONDS)
+   long visibility;
+   
+   @Label("Lighting")
+   @Timespan(Timespan.NANOSECONDS)
+   long lighting;
+   
+   @Label("Sort")
+   @Timespan(Timespan.NANOSECONDS)
+   long sort;
+   
+   @Label("Raster")
+   @Timespan(Timespan.NANOSECONDS)
+   long raster;
+   
+   @Label("Present")
+   @Timespan(Timespan.NANOSECONDS)
+   long present;
+}
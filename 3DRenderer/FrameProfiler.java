@@ -0,0 +1,328 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import jdk.jfr.EventType;
+
+/**
+    This class times the stages of drawing each frame of a RenderContext. The
+    time each stage takes is added up over the frame, however many models or
+    tiles it runs for, and recorded into a LatencyHistogram of that stage when
+    the frame ends. The whole frame is recorded too, from the end of one frame
+    to the end of the next, which includes everything done between frames.
+    
+    Timing is off until enabled, and then costs one call to System.nanoTime per
+    stage and model. The histograms can be read and exported from any thread.
+    
+    While a flight recording has them enabled, a FrameEvent is also recorded
+    for each frame, with the number of models, faces, visible surfaces, points
+    and lights, and a StageEvent for each run of a stage. Whether to record them
+    is checked once per frame, so with no recording running they cost nothing,
+    and the stages are only timed for them while recording.
+*/
+public class FrameProfiler
+{
+   /**
+       Composing the matrices and transforming the points of the models.
+   */
+   public static final int TRANSFORM = 0;
+   
+   /**
+       Finding the models in view, the surfaces facing the camera and the
+       surfaces on the screen.
+   */
+   public static final int VISIBILITY = 1;
+   
+   /**
+       Shading the visible surfaces or their points.
+   */
+   public static final int LIGHTING = 2;
+   
+   /**
+       Sorting the draw stack by depth.
+   */
+   public static final int SORT = 3;
+   
+   /**
+       Drawing the surfaces into the image of the render mode.
+   */
+   public static final int RASTER = 4;
+   
+   /**
+       Copying the drawn part of the image onto the graphics.
+   */
+   public static final int PRESENT = 5;
+   
+   /**
+       The whole frame, not a stage.
+   */
+   public static final int FRAME = 6;
+   
+   private static final String[] NAMES = {"transform", "visibility", "lighting", "sort", "raster", "present",
+                                          "frame"};
+   
+   private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class);
+   private static final EventType STAGE_EVENT = EventType.getEventType(StageEvent.class);
+   
+   private LatencyHistogram[] histograms;
+   //time spent in each stage this frame, and the size of the frame
+   private long[] frameTimes;
+   private int models;
+   private int faces;
+   private int vertices;
+   private long lastFrameEnd;
+   private long frame;
+   private volatile boolean enabled;
+   //whether the stages are timed this frame, which they are for the histograms
+   //or for the events of a flight recording. The event of the frame is begun
+   //at the start of the frame, and the event of the stage being run at the
+   //start of the stage. One stage event is reused for every stage, begun
+   //again after each is committed, so recording stages allocates nothing.
+   private boolean timing;
+   private FrameEvent frameEvent;
+   private StageEvent stageEvent;
+   private boolean recordingStages;
+   
+   public FrameProfiler() {
+      histograms = new LatencyHistogram[NAMES.length];
+      for (int i = 0; i < histograms.length; i++) {
+         histograms[i] = new LatencyHistogram();
+      }
+      frameTimes = new long[NAMES.length];
+      lastFrameEnd = 0;
+      frame = 0;
+      enabled = false;
+      timing = false;
+      frameEvent = null;
+      stageEvent = new StageEvent();
+      recordingStages = false;
+   }
+   
+   /**
+       Switches timing the stages on or off. Only the thread drawing the frames
+       should switch it, between frames.
+   */
+   public void setEnabled(boolean state) {
+      if (state && !enabled) {
+         for (int i = 0; i < frameTimes.length; i++) {
+            frameTimes[i] = 0;
+         }
+         lastFrameEnd = 0;
+      }
+      enabled = state;
+      timing = state || recordingStages || (frameEvent != null);
+   }
+   
+   public boolean isEnabled() {
+      return enabled;
+   }
+   
+   /**
+       Returns the time a stage starts at, to pass to lap, or 0 when timing is off.
+   */
+   public long start() {
+      if (!timing) {
+         return 0;
+      }
+      if (recordingStages) {
+         stageEvent.begin();
+      }
+      return System.nanoTime();
+   }
+   
+   /**
+       Adds the time since the given start to a stage of this frame.
+       @param stage int one of the stage constants
+       @param startTime long the time from start or the last lap
+       @return long the current time, which is the start of the next stage
+   */
+   public long lap(int stage, long startTime) {
+      if (!timing) {
+         return 0;
+      }
+      long now = System.nanoTime();
+      frameTimes[stage] += now - startTime;
+      if (recordingStages) {
+         stageEvent.end();
+         if (stageEvent.shouldCommit()) {
+            stageEvent.frame = frame;
+            stageEvent.stage = NAMES[stage];
+            stageEvent.commit();
+         }
+         //the next stage, if there is one, starts now
+         stageEvent.begin();
+      }
+      return now;
+   }
+   
+   /**
+       Adds a model in view of the camera to the size of the frame.
+       @param surfaces int number of surfaces the model is drawn with
+       @param points int number of points the model is drawn with
+   */
+   public void addModel(int surfaces, int points) {
+      if (timing) {
+         models++;
+         faces += surfaces;
+         vertices += points;
+      }
+   }
+   
+   /**
+       Records the time of each stage of the frame into its histogram, commits the
+       events of the frame, and starts the next frame. The first frame after
+       enabling has no whole frame time.
+       @param visibleSurfaces int number of surfaces drawn this frame
+       @param lights int number of light sources of the frame
+   */
+   public void endFrame(int visibleSurfaces, int lights) {
+      if (timing) {
+         long now = System.nanoTime();
+         if (frameEvent != null) {
+            frameEvent.end();
+         }
+         if ((frameEvent != null) && frameEvent.shouldCommit()) {
+            frameEvent.frame = frame;
+            frameEvent.models = models;
+            frameEvent.faces = faces;
+            frameEvent.visibleSurfaces = visibleSurfaces;
+            frameEvent.vertices = vertices;
+            frameEvent.lights = lights;
+            frameEvent.transform = frameTimes[TRANSFORM];
+            frameEvent.visibility = frameTimes[VISIBILITY];
+            frameEvent.lighting = frameTimes[LIGHTING];
+            frameEvent.sort = frameTimes[SORT];
+            frameEvent.raster = frameTimes[RASTER];
+            frameEvent.present = frameTimes[PRESENT];
+            frameEvent.commit();
+         }
+         if (enabled) {
+            for (int i = 0; i < FRAME; i++) {
+               histograms[i].record(frameTimes[i]);
+            }
+            if (lastFrameEnd != 0) {
+               histograms[FRAME].record(now - lastFrameEnd);
+            }
+            lastFrameEnd = now;
+         }
+         for (int i = 0; i < frameTimes.length; i++) {
+            frameTimes[i] = 0;
+         }
+         models = 0;
+         faces = 0;
+         vertices = 0;
+      }
+      frame++;
+      
+      recordingStages = STAGE_EVENT.isEnabled();
+      frameEvent = null;
+      if (FRAME_EVENT.isEnabled()) {
+         frameEvent = new FrameEvent();
+         frameEvent.begin();
+      }
+      timing = enabled || recordingStages || (frameEvent != null);
+   }
+   
+   /**
+       Removes everything recorded so far.
+   */
+   public void reset() {
+      for (int i = 0; i < histograms.length; i++) {
+         histograms[i].reset();
+      }
+   }
+   
+   /**
+       Returns the number of stages including the whole frame, which is the last.
+   */
+   public int getNumbStages() {
+      return NAMES.length;
+   }
+   
+   public String getStageName(int stage) {
+      return NAMES[stage];
+   }
+   
+   public LatencyHistogram getHistogram(int stage) {
+      return histograms[stage];
+   }
+   
+   /**
+       Writes the histograms to a file, as JSON if the name ends with .json and as
+       CSV otherwise.
+   */
+   public void export(String fileName) throws IOException {
+      Writer out = new FileWriter(new File(fileName));
+      try {
+         if (fileName.endsWith(".json")) {
+            writeJson(out);
+         }
+         else {
+            writeCsv(out);
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+   
+   /**
+       Exports the histograms to the given file when the program exits, if any
+       frames were timed by then.
+   */
+   public void exportOnShutdown(final String fileName) {
+      Runtime.getRuntime().addShutdownHook(new Thread("Profile export") {
+         public void run() {
+            if (histograms[FRAME].getCount() == 0) {
+               return;
+            }
+            try {
+               export(fileName);
+            }
+            catch (IOException e) {
+               System.out.println("Could not write profile: " + e.getMessage());
+            }
+         }
+      });
+   }
+   
+   /**
+       Writes one line per stage with the number of frames and the mean,
+       percentiles and maximum in microseconds.
+   */
+   public void writeCsv(Writer writer) {
+      PrintWriter out = new PrintWriter(writer);
+      out.println("stage,count,mean_us,p50_us,p99_us,p99.9_us,max_us");
+      for (int i = 0; i < histograms.length; i++) {
+         LatencyHistogram h = histograms[i];
+         out.println(NAMES[i] + "," + h.getCount() + "," + micros(h.getMean()) + "," + micros(h.getPercentile(50))
+                     + "," + micros(h.getPercentile(99)) + "," + micros(h.getPercentile(99.9))
+                     + "," + micros(h.getMax()));
+      }
+      out.flush();
+   }
+   
+   /**
+       Writes an object with an object for each stage holding the same values as
+       writeCsv.
+   */
+   public void writeJson(Writer writer) {
+      PrintWriter out = new PrintWriter(writer);
+      out.println("{");
+      for (int i = 0; i < histograms.length; i++) {
+         LatencyHistogram h = histograms[i];
+         out.print("   \"" + NAMES[i] + "\": {\"count\": " + h.getCount() + ", \"mean_us\": " + micros(h.getMean())
+                   + ", \"p50_us\": " + micros(h.getPercentile(50)) + ", \"p99_us\": " + micros(h.getPercentile(99))
+                   + ", \"p99.9_us\": " + micros(h.getPercentile(99.9)) + ", \"max_us\": " + micros(h.getMax()) + "}");
+         out.println((i < histograms.length - 1) ? "," : "");
+      }
+      out.println("}");
+      out.flush();
+   }
+   
+   private static String micros(double nanos) {
+      return String.format(Locale.ROOT, "%.3f", nanos / 1000);
+   }
+}
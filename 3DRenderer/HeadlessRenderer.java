@@ -0,0 +1,275 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+    This class renders the orbit scene without a window, as fast as possible,
+    and optionally writes every frame to a PNG or raw RGB file. It runs with
+    java.awt.headless=true, so it can be used on machines without a display.
+    The simulation advances by a fixed step each frame instead of using the
+    measured frame rate, so the same arguments always give the same frames.
+    
+    Usage: java -Djava.awt.headless=true HeadlessRenderer [options]
+       -frames N        number of frames to render (default 300)
+       -out DIR         directory to write frames to, no frames are written without it
+       -format png|rgb  format of the written frames (default png)
+       -mode java2d|zbuffer|tiled   how the surfaces are drawn (default java2d)
+       -width W, -height H          size of the frames (default 800 x 500)
+       -input DIR       directory containing the model files (default input)
+       -step S          simulation time added each frame (default 1)
+       -wireframe       draw outlines instead of filled surfaces
+       -lod             draw the models with fewer surfaces when they're small
+       -profile FILE    time the stages of each frame and write their percentiles
+                        to FILE, as JSON if it ends with .json and CSV otherwise
+*/
+public class HeadlessRenderer
+{
+   private int frames = 300;
+   private String outputDirectory = null;
+   private String format = "png";
+   private int renderMode = RenderContext.JAVA2D;
+   private int width = 800;
+   private int height = 500;
+   private String inputDirectory = "input";
+   private double timeStep = 1;
+   private boolean wireframe = false;
+   private boolean levelsOfDetail = false;
+   private String profileFile = null;
+   
+   //frames are encoded and written on separate threads. The number of frames
+   //waiting to be written is limited so memory doesn't grow without bound.
+   private ExecutorService writers;
+   private Semaphore pendingFrames;
+   private volatile IOException writeError = null;
+   
+   public static void main(String[] args) {
+      System.setProperty("java.awt.headless", "true");
+      
+      HeadlessRenderer renderer = new HeadlessRenderer();
+      try {
+         renderer.parseArguments(args);
+         renderer.run();
+      }
+      catch (IllegalArgumentException e) {
+         System.out.println(e.getMessage());
+         System.exit(1);
+      }
+      catch (IOException e) {
+         System.out.println("Could not write frames: " + e.getMessage());
+         System.exit(1);
+      }
+   }
+   
+   private void parseArguments(String[] args) throws IllegalArgumentException {
+      try {
+         for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-frames")) {
+               frames = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-out")) {
+               outputDirectory = args[++i];
+            }
+            else if (arg.equals("-format")) {
+               format = args[++i];
+               if (!format.equals("png") && !format.equals("rgb")) {
+                  throw new IllegalArgumentException("Format must be png or rgb: " + format);
+               }
+            }
+            else if (arg.equals("-mode")) {
+               renderMode = parseMode(args[++i]);
+            }
+            else if (arg.equals("-width")) {
+               width = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-height")) {
+               height = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-input")) {
+               inputDirectory = args[++i];
+            }
+            else if (arg.equals("-step")) {
+               timeStep = Double.parseDouble(args[++i]);
+            }
+            else if (arg.equals("-wireframe")) {
+               wireframe = true;
+            }
+            else if (arg.equals("-lod")) {
+               levelsOfDetail = true;
+            }
+            else if (arg.equals("-profile")) {
+               profileFile = args[++i];
+            }
+            else {
+               throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+         }
+      }
+      catch (ArrayIndexOutOfBoundsException e) {
+         throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+      }
+   }
+   
+   private static int parseMode(String mode) throws IllegalArgumentException {
+      if (mode.equals("java2d")) {
+         return RenderContext.JAVA2D;
+      }
+      else if (mode.equals("zbuffer")) {
+         return RenderContext.Z_BUFFER;
+      }
+      else if (mode.equals("tiled")) {
+         return RenderContext.TILED;
+      }
+      throw new IllegalArgumentException("Mode must be java2d, zbuffer or tiled: " + mode);
+   }
+   
+   /**
+       Loads the scene, renders all frames and prints the throughput.
+   */
+   public void run() throws IOException {
+      Camera cam = OrbitScene.createCamera(width, height);
+      RenderContext context = new RenderContext(cam);
+      OrbitScene.addLights(context);
+      context.setRenderMode(renderMode);
+      context.setWireframe(wireframe);
+      context.setSortWarmStart(true);
+      context.getProfiler().setEnabled(profileFile != null);
+      
+      OrbitScene scene = new OrbitScene();
+      scene.useLevelsOfDetail(levelsOfDetail);
+      scene.load(cam, inputDirectory);
+      
+      if (outputDirectory != null) {
+         new File(outputDirectory).mkdirs();
+         int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+         writers = Executors.newFixedThreadPool(threads);
+         pendingFrames = new Semaphore(threads * 2);
+      }
+      
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = image.createGraphics();
+      Color background = wireframe ? Color.WHITE : Color.BLACK;
+      //the image keeps each frame, so it's only filled once here and each frame
+      //clears just the part the last one was drawn over
+      g.setColor(background);
+      g.fillRect(0, 0, width, height);
+      context.setTargetBackground(background);
+      long visibleSurfaces = 0;
+      long renderTime = 0;
+      long start = System.nanoTime();
+      
+      for (int frame = 0; frame < frames; frame++) {
+         long frameStart = System.nanoTime();
+         scene.step(timeStep);
+         scene.setDrawStack(context);
+         visibleSurfaces += context.getDrawStack().size();
+         Surface.drawAll(context, g);
+         renderTime += System.nanoTime() - frameStart;
+         
+         if (writers != null) {
+            writeFrame(image, frame);
+         }
+      }
+      
+      if (writers != null) {
+         writers.shutdown();
+         try {
+            writers.awaitTermination(1, TimeUnit.HOURS);
+         }
+         catch (InterruptedException e) {
+            System.out.println("Interrupted");
+         }
+         if (writeError != null) {
+            throw writeError;
+         }
+      }
+      g.dispose();
+      
+      double totalSeconds = (System.nanoTime() - start) / 1e9;
+      double renderSeconds = renderTime / 1e9;
+      long totalSurfaces = (long)scene.getNumbSurfaces() * frames;
+      DecimalFormat f = new DecimalFormat("0.00");
+      
+      System.out.println("Frames: " + frames + " at " + width + "x" + height);
+      System.out.println("Total time: " + f.format(totalSeconds) + " s (" + f.format(frames / totalSeconds) + " frames/sec)");
+      System.out.println("Render time: " + f.format(renderSeconds) + " s (" + f.format(frames / renderSeconds) + " frames/sec)");
+      System.out.println("Faces/sec: " + f.format(totalSurfaces / renderSeconds) + " processed, "
+                         + f.format(visibleSurfaces / renderSeconds) + " drawn");
+      if (profileFile != null) {
+         context.getProfiler().export(profileFile);
+         System.out.println("Stage times written to " + profileFile);
+      }
+   }
+   
+   /**
+       Copies the frame and writes it on one of the writer threads.
+   */
+   private void writeFrame(BufferedImage image, int frame) throws IOException {
+      if (writeError != null) {
+         throw writeError;
+      }
+      try {
+         pendingFrames.acquire();
+      }
+      catch (InterruptedException e) {
+         throw new IOException("Interrupted");
+      }
+      
+      final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData().clone();
+      final File file = new File(outputDirectory, String.format("frame_%05d.%s", frame, format));
+      writers.execute(new Runnable() {
+         public void run() {
+            try {
+               if (format.equals("png")) {
+                  BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                  copy.getRaster().setDataElements(0, 0, width, height, pixels);
+                  ImageIO.write(copy, "png", file);
+               }
+               else {
+                  writeRaw(pixels, file);
+               }
+            }
+            catch (IOException e) {
+               writeError = e;
+            }
+            finally {
+               pendingFrames.release();
+            }
+         }
+      });
+   }
+   
+   /**
+       Writes the pixels as 8 bit red, green and blue values, row by row with no header.
+   */
+   private static void writeRaw(int[] pixels, File file) throws IOException {
+      byte[] bytes = new byte[pixels.length * 3];
+      for (int i = 0; i < pixels.length; i++) {
+         bytes[(i * 3)] = (byte)(pixels[i] >> 16);
+         bytes[(i * 3) + 1] = (byte)(pixels[i] >> 8);
+         bytes[(i * 3) + 2] = (byte)pixels[i];
+      }
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+      try {
+         out.write(bytes);
+      }
+      finally {
+         out.close();
+      }
+   }
+}
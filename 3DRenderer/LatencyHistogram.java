@@ -0,0 +1,127 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+    This class counts durations in nanoseconds into a fixed set of buckets, so
+    recording never allocates and the percentiles can be read at any time.
+    Durations below 32 ns each get their own bucket. Above that every power of
+    two is split into 32 buckets, so a percentile is never off by more than about
+    3%, and the largest durations still only need a couple of thousand buckets.
+    Recording only uses atomic adds, so other threads can record or read the
+    histogram while it's being recorded into without any locking.
+*/
+public class LatencyHistogram
+{
+   //number of bits of a duration kept exactly, the rest only by their power of two
+   private static final int SUB_BITS = 5;
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+   
+   private AtomicLongArray counts;
+   private AtomicLong count;
+   private AtomicLong total;
+   private AtomicLong max;
+   
+   public LatencyHistogram() {
+      counts = new AtomicLongArray((64 - SUB_BITS) * SUB_BUCKETS);
+      count = new AtomicLong();
+      total = new AtomicLong();
+      max = new AtomicLong();
+   }
+   
+   /**
+       Adds a duration to the histogram. Negative durations count as 0.
+       @param nanos long duration in nanoseconds
+   */
+   public void record(long nanos) {
+      if (nanos < 0) {
+         nanos = 0;
+      }
+      counts.incrementAndGet(bucket(nanos));
+      count.incrementAndGet();
+      total.addAndGet(nanos);
+      long largest = max.get();
+      while ((nanos > largest) && !max.compareAndSet(largest, nanos)) {
+         largest = max.get();
+      }
+   }
+   
+   /**
+       Returns the bucket of a duration. The bucket of a duration with the highest
+       bit e is found from its SUB_BITS + 1 highest bits, which go from SUB_BUCKETS
+       to twice that, so each power of two above SUB_BUCKETS gets the next
+       SUB_BUCKETS buckets.
+   */
+   private static int bucket(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+         return (int)nanos;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int shift = exponent - SUB_BITS;
+      return ((shift + 1) << SUB_BITS) + (int)((nanos >>> shift) - SUB_BUCKETS);
+   }
+   
+   /**
+       Returns the largest duration counted into the given bucket.
+   */
+   private static long highestInBucket(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+         return bucket;
+      }
+      int shift = (bucket >> SUB_BITS) - 1;
+      long top = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+      return ((top + 1) << shift) - 1;
+   }
+   
+   /**
+       Returns the duration that the given percent of the recorded durations are
+       at or below, to the precision of the buckets, or 0 if nothing was recorded.
+       @param percentile double from 0 to 100
+   */
+   public long getPercentile(double percentile) {
+      long recorded = count.get();
+      if (recorded == 0) {
+         return 0;
+      }
+      long wanted = Math.max(1, (long)Math.ceil((percentile / 100) * recorded));
+      long seen = 0;
+      for (int i = 0; i < counts.length(); i++) {
+         seen += counts.get(i);
+         if (seen >= wanted) {
+            return Math.min(highestInBucket(i), max.get());
+         }
+      }
+      return max.get();
+   }
+   
+   public long getCount() {
+      return count.get();
+   }
+   
+   public long getMax() {
+      return max.get();
+   }
+   
+   /**
+       Returns the average duration, or 0 if nothing was recorded.
+   */
+   public double getMean() {
+      long recorded = count.get();
+      if (recorded == 0) {
+         return 0;
+      }
+      return total.get() / (double)recorded;
+   }
+   
+   /**
+       Removes every recorded duration. Durations recorded by other threads
+       while resetting may be partly kept.
+   */
+   public void reset() {
+      for (int i = 0; i < counts.length(); i++) {
+         counts.set(i, 0);
+      }
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+}
@@ -0,0 +1,294 @@
+import java.util.Arrays;
+
+/**
+    This class shades the surfaces of a frame with the light sources of a
+    RenderContext. The lights are copied into arrays whenever they change. Lights
+    with a range are put into a grid of cells, so a surface only looks at the
+    lights reaching the cell its center is in, and many small lights cost
+    about as much as a few. Lights without a range reach everything and are
+    checked by every surface.
+    
+    Colors are packed ARGB ints, so shading a surface allocates nothing.
+*/
+public class Lighting
+{
+   //a light covering more cells than this is checked by every surface instead
+   private static final int MAX_CELLS_PER_LIGHT = 64;
+   
+   //lights checked by every surface, with their range or infinity
+   private double[] globalX, globalY, globalZ, globalRange;
+   private int numbGlobal;
+   
+   //all lights, indexed by the cells
+   private double[] lightX, lightY, lightZ, lightRange;
+   private int numbLights;
+   
+   //hash table of the cells that have lights. Cell i has the key cellKeys[i],
+   //and its lights are cellLights[cellStart[i]] up to cellLights[cellStart[i] + cellCount[i]].
+   private double cellSize;
+   private long[] cellKeys;
+   private int[] cellStart;
+   private int[] cellCount;
+   private boolean[] cellUsed;
+   private int[] cellLights;
+   private int tableMask;
+   
+   public Lighting() {
+      globalX = new double[0];
+      globalY = new double[0];
+      globalZ = new double[0];
+      globalRange = new double[0];
+      numbGlobal = 0;
+      lightX = new double[0];
+      lightY = new double[0];
+      lightZ = new double[0];
+      lightRange = new double[0];
+      numbLights = 0;
+      cellSize = 1;
+      tableMask = -1;
+   }
+   
+   /**
+       Copies the lights of the context and sorts the ones with a range into cells.
+       The cells are as large as the average range, so most lights only cover a
+       few of them.
+   */
+   public void prepare(RenderContext context) {
+      int count = context.getNumbLights();
+      if (lightX.length < count) {
+         lightX = new double[count];
+         lightY = new double[count];
+         lightZ = new double[count];
+         lightRange = new double[count];
+         globalX = new double[count];
+         globalY = new double[count];
+         globalZ = new double[count];
+         globalRange = new double[count];
+      }
+      numbLights = 0;
+      numbGlobal = 0;
+      
+      double rangeSum = 0;
+      int numbRanged = 0;
+      for (int i = 0; i < count; i++) {
+         Vector source = context.getLightSource(i);
+         double range = context.getLightRange(i);
+         if (Double.isInfinite(range)) {
+            addGlobal(source.getXD(), source.getYD(), source.getZD(), range);
+         }
+         else {
+            lightX[numbLights] = source.getXD();
+            lightY[numbLights] = source.getYD();
+            lightZ[numbLights] = source.getZD();
+            lightRange[numbLights] = range;
+            numbLights++;
+            rangeSum += range;
+            numbRanged++;
+         }
+      }
+      
+      tableMask = -1;
+      if (numbRanged == 0) {
+         return;
+      }
+      cellSize = Math.max(rangeSum / numbRanged, 1e-6);
+      
+      //lights covering too many cells are moved to the global lights, the rest
+      //are counted into their cells and then written into one array
+      int kept = 0;
+      long totalEntries = 0;
+      for (int i = 0; i < numbLights; i++) {
+         long cells = cellsAcross(lightX[i], lightRange[i]) * cellsAcross(lightY[i], lightRange[i])
+                      * cellsAcross(lightZ[i], lightRange[i]);
+         if (cells > MAX_CELLS_PER_LIGHT) {
+            addGlobal(lightX[i], lightY[i], lightZ[i], lightRange[i]);
+            continue;
+         }
+         lightX[kept] = lightX[i];
+         lightY[kept] = lightY[i];
+         lightZ[kept] = lightZ[i];
+         lightRange[kept] = lightRange[i];
+         kept++;
+         totalEntries += cells;
+      }
+      numbLights = kept;
+      
+      //the table is at most half full even if no two lights share a cell
+      int capacity = Integer.highestOneBit((int)Math.max(8, totalEntries)) * 4;
+      if ((cellKeys == null) || (cellKeys.length < capacity)) {
+         cellKeys = new long[capacity];
+         cellStart = new int[capacity];
+         cellCount = new int[capacity];
+         cellUsed = new boolean[capacity];
+      }
+      tableMask = capacity - 1;
+      Arrays.fill(cellUsed, 0, capacity, false);
+      Arrays.fill(cellCount, 0, capacity, 0);
+      
+      for (int i = 0; i < numbLights; i++) {
+         int minX = cell(lightX[i] - lightRange[i]);
+         int minY = cell(lightY[i] - lightRange[i]);
+         int minZ = cell(lightZ[i] - lightRange[i]);
+         int maxX = cell(lightX[i] + lightRange[i]);
+         int maxY = cell(lightY[i] + lightRange[i]);
+         int maxZ = cell(lightZ[i] + lightRange[i]);
+         for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+               for (int z = minZ; z <= maxZ; z++) {
+                  int slot = findSlot(key(x, y, z));
+                  if (!cellUsed[slot]) {
+                     cellUsed[slot] = true;
+                     cellKeys[slot] = key(x, y, z);
+                  }
+                  cellCount[slot]++;
+               }
+            }
+         }
+      }
+      
+      int offset = 0;
+      for (int i = 0; i <= tableMask; i++) {
+         if (cellUsed[i]) {
+            cellStart[i] = offset;
+            offset += cellCount[i];
+            cellCount[i] = 0;
+         }
+      }
+      if ((cellLights == null) || (cellLights.length < totalEntries)) {
+         cellLights = new int[(int)totalEntries];
+      }
+      for (int i = 0; i < numbLights; i++) {
+         int minX = cell(lightX[i] - lightRange[i]);
+         int minY = cell(lightY[i] - lightRange[i]);
+         int minZ = cell(lightZ[i] - lightRange[i]);
+         int maxX = cell(lightX[i] + lightRange[i]);
+         int maxY = cell(lightY[i] + lightRange[i]);
+         int maxZ = cell(lightZ[i] + lightRange[i]);
+         for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+               for (int z = minZ; z <= maxZ; z++) {
+                  int slot = findSlot(key(x, y, z));
+                  cellLights[cellStart[slot] + cellCount[slot]] = i;
+                  cellCount[slot]++;
+               }
+            }
+         }
+      }
+   }
+   
+   private void addGlobal(double x, double y, double z, double range) {
+      globalX[numbGlobal] = x;
+      globalY[numbGlobal] = y;
+      globalZ[numbGlobal] = z;
+      globalRange[numbGlobal] = range;
+      numbGlobal++;
+   }
+   
+   private int cell(double coordinate) {
+      return (int)Math.floor(coordinate / cellSize);
+   }
+   
+   /**
+       Returns the number of cells a light covers along one axis.
+   */
+   private long cellsAcross(double coordinate, double range) {
+      return (long)cell(coordinate + range) - cell(coordinate - range) + 1;
+   }
+   
+   private static long key(int x, int y, int z) {
+      return ((x & 0x1FFFFFL) << 42) | ((y & 0x1FFFFFL) << 21) | (z & 0x1FFFFFL);
+   }
+   
+   /**
+       Returns the slot of the table holding the given cell, or the empty slot
+       it would go in.
+   */
+   private int findSlot(long key) {
+      int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & tableMask;
+      while (cellUsed[slot] && (cellKeys[slot] != key)) {
+         slot = (slot + 1) & tableMask;
+      }
+      return slot;
+   }
+   
+   /**
+       Returns the color of a surface lit by the lights of the frame.
+       @param rgb int color of the surface
+       @param x double x coordinate of the center of the surface in the world
+       @param y double y coordinate of the center of the surface in the world
+       @param z double z coordinate of the center of the surface in the world
+       @param normalX double x component of the unit normal of the surface in the world
+       @param normalY double y component of the unit normal
+       @param normalZ double z component of the unit normal
+       @return int the shaded color as packed ARGB
+   */
+   public int shade(int rgb, double x, double y, double z, double normalX, double normalY, double normalZ) {
+      return scale(rgb, intensity(x, y, z, normalX, normalY, normalZ));
+   }
+   
+   /**
+       Returns how much a point with the given unit normal is lit by the lights of
+       the frame, from 0 to 1.
+   */
+   public double intensity(double x, double y, double z, double normalX, double normalY, double normalZ) {
+      double lightingPercentage = 0;
+      for (int i = 0; i < numbGlobal; i++) {
+         lightingPercentage += light(globalX[i], globalY[i], globalZ[i], globalRange[i],
+                                     x, y, z, normalX, normalY, normalZ);
+      }
+      
+      if (tableMask >= 0) {
+         int slot = findSlot(key(cell(x), cell(y), cell(z)));
+         if (cellUsed[slot]) {
+            int end = cellStart[slot] + cellCount[slot];
+            for (int i = cellStart[slot]; i < end; i++) {
+               int light = cellLights[i];
+               lightingPercentage += light(lightX[light], lightY[light], lightZ[light], lightRange[light],
+                                           x, y, z, normalX, normalY, normalZ);
+            }
+         }
+      }
+      
+      if (lightingPercentage > 1) {
+         lightingPercentage = 1;
+      }
+      return lightingPercentage;
+   }
+   
+   /**
+       Returns the given packed color with each channel multiplied by the given
+       intensity, and an alpha of 255.
+   */
+   public static int scale(int rgb, double intensity) {
+      int red = (int)(((rgb >> 16) & 0xFF) * intensity);
+      int green = (int)(((rgb >> 8) & 0xFF) * intensity);
+      int blue = (int)((rgb & 0xFF) * intensity);
+      return 0xFF000000 | (red << 16) | (green << 8) | blue;
+   }
+   
+   /**
+       Returns how much a light lights a point with the given normal. It's the
+       cosine of the angle between the normal and the direction to the light,
+       fading out smoothly towards the range of the light.
+   */
+   private static double light(double lightX, double lightY, double lightZ, double range,
+                               double x, double y, double z, double normalX, double normalY, double normalZ) {
+      double dx = lightX - x;
+      double dy = lightY - y;
+      double dz = lightZ - z;
+      double distanceSquared = (dx * dx) + (dy * dy) + (dz * dz);
+      double dot = (normalX * dx) + (normalY * dy) + (normalZ * dz);
+      if ((dot <= 0) || (distanceSquared == 0)) {
+         return 0;
+      }
+      double cosine = dot / Math.sqrt(distanceSquared);
+      if (Double.isInfinite(range)) {
+         return cosine;
+      }
+      double fade = 1 - (distanceSquared / (range * range));
+      if (fade <= 0) {
+         return 0;
+      }
+      return cosine * fade * fade;
+   }
+}
@@ -0,0 +1,156 @@
+import java.text.DecimalFormat;
+
+/**
+    This class is a 4x4 matrix used for homogeneous coordinates, so that scaling,
+    rotation, translation and the perspective projection can be combined into a
+    single matrix. A point (x, y, z) is treated as (x, y, z, 1).
+*/
+public class Matrix4x4
+{
+   //top level array is rows, second level is columbs
+   private double[][] matrix = new double[4][4];
+   
+   public Matrix4x4(double[][] matrixArray) throws IllegalArgumentException {
+      try {
+         for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+               matrix[i][j] = matrixArray[i][j];
+            }
+         }
+      }
+      catch(ArrayIndexOutOfBoundsException e) {
+         throw new IllegalArgumentException("Should be a 4x4 array.");
+      }
+   }
+   
+   /**
+       Creates a 4x4 matrix with the given 3x3 matrix in the upper left corner
+       and no translation.
+       @param m Matrix3x3 linear part of the transformation
+   */
+   public Matrix4x4(Matrix3x3 m) {
+      for (int i = 0; i < 3; i++) {
+         for (int j = 0; j < 3; j++) {
+            matrix[i][j] = m.getElement(i, j);
+         }
+      }
+      matrix[3][3] = 1;
+   }
+   
+   public Matrix4x4() {
+      for (int i = 0; i < 4; i++) {
+         for (int j = 0; j < 4; j++) {
+            matrix[i][j] = 0;
+         }
+      }
+   }
+   
+   public boolean editElement(int row, int columb, double newValue) {
+      if ((row < 4) && (columb < 4) && (row >= 0) && (columb >= 0)) {
+         matrix[row][columb] = newValue;
+         return true;
+      }
+      return false;
+   }
+   
+   public double getElement(int row, int columb) throws IllegalArgumentException {
+      if ((row < 4) && (columb < 4) && (row >= 0) && (columb >= 0)) {
+         return matrix[row][columb];
+      }
+      else {
+         throw new IllegalArgumentException("Values must be less than 4 and greater than or equal to 0.");
+      }
+   }
+   
+   /**
+       Returns a String representation of the matrix.
+       @return String visual representation of the matrix
+   */
+   public String toString() {
+      DecimalFormat f = new DecimalFormat("0.00000");
+      String output = "";
+      for (int i = 0; i < 4; i++) {
+         output += "\n| ";
+         for (int j = 0; j < 4; j++) {
+            output += f.format(matrix[i][j]) + " ";
+         }
+         output += "|";
+      }
+      output += "\n";
+      return output;
+   }
+   
+   public Matrix4x4 getTranspose() {
+      Matrix4x4 transpose = new Matrix4x4();
+      
+      for (int i = 0; i < 4; i++) {
+         for (int j = 0; j < 4; j++) {
+            transpose.matrix[i][j] = matrix[j][i];
+         }
+      }
+      
+      return transpose;
+   }
+   
+   public Matrix4x4 clone() {
+      return new Matrix4x4(matrix);
+   }
+   
+   public Matrix4x4 multiply(Matrix4x4 m) {
+      Matrix4x4 output = new Matrix4x4();
+      for (int i = 0; i < 4; i++) {
+         for (int j = 0; j < 4; j++) {
+            output.matrix[i][j] = matrix[i][0] * m.matrix[0][j] + matrix[i][1] * m.matrix[1][j]
+                                + matrix[i][2] * m.matrix[2][j] + matrix[i][3] * m.matrix[3][j];
+         }
+      }
+      
+      return output;
+   }
+   
+   /**
+       Transforms the given point, including the divide by the homogeneous
+       coordinate. The z value is not divided so that it keeps the depth
+       of the point.
+       @param v Vector point to transform
+       @return Vector transformed point
+   */
+   public Vector transformPoint(Vector v) {
+      double x = v.getXD() * matrix[0][0] + v.getYD() * matrix[0][1] + v.getZD() * matrix[0][2] + matrix[0][3];
+      double y = v.getXD() * matrix[1][0] + v.getYD() * matrix[1][1] + v.getZD() * matrix[1][2] + matrix[1][3];
+      double z = v.getXD() * matrix[2][0] + v.getYD() * matrix[2][1] + v.getZD() * matrix[2][2] + matrix[2][3];
+      double w = v.getXD() * matrix[3][0] + v.getYD() * matrix[3][1] + v.getZD() * matrix[3][2] + matrix[3][3];
+      
+      return new Vector(x / w, y / w, z);
+   }
+   
+   public static Matrix4x4 identityMatrix() {
+      return new Matrix4x4(Matrix3x3.identityMatrix());
+   }
+   
+   public static Matrix4x4 translate(Vector offset) {
+      Matrix4x4 output = identityMatrix();
+      output.matrix[0][3] = offset.getXD();
+      output.matrix[1][3] = offset.getYD();
+      output.matrix[2][3] = offset.getZD();
+      return output;
+   }
+   
+   /**
+       Creates the projection used by the Camera class. Points in camera space
+       are scaled by perspectivePoint / (perspectivePoint + z) and then moved by
+       the screen origin. The w row holds (perspectivePoint + z) / perspectivePoint,
+       so the origin is multiplied by w to survive the divide.
+       @param perspectivePoint double distance of the perspective point from the screen
+       @param origin Vector screen position of the camera center
+   */
+   public static Matrix4x4 perspective(double perspectivePoint, Vector origin) {
+      Matrix4x4 output = identityMatrix();
+      output.matrix[0][2] = origin.getXD() / perspectivePoint;
+      output.matrix[0][3] = origin.getXD();
+      output.matrix[1][2] = origin.getYD() / perspectivePoint;
+      output.matrix[1][3] = origin.getYD();
+      output.matrix[3][2] = 1 / perspectivePoint;
+      return output;
+   }
+}
@@ -0,0 +1,531 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+    This class holds the geometry of a model: its points, the point indices of
+    its surfaces and their colors. Everything that differs between copies of a
+    model, like position, rotation and scale, is kept in the Model, so one mesh
+    can be drawn by any number of models at once. Meshes loaded through the
+    MeshCache are shared and are never modified.
+    
+    The points are stored as separate x, y and z arrays, and the indices of all
+    surfaces are stored in one array, with surface i made of the indices from
+    offsets[i] up to offsets[i + 1]. The bounding box and bounding sphere of the
+    points are computed when the mesh is created, for culling models outside of
+    the view, along with the normal, plane and centroid of each surface and the
+    normal of each point for smooth shading, so they don't have to be found
+    again every frame.
+    
+    Each surface is also split into triangles by the Triangulator when the mesh
+    is created, so it can be drawn with a fixed three points at a time whatever
+    its shape. The triangles are stored as one index buffer, three indices each,
+    with the triangles of surface i from triangleOffsets[i] up to
+    triangleOffsets[i + 1]. The triangles of a surface are drawn with the color
+    the surface is shaded with that frame, which can differ between the copies
+    of a model, so the colors are kept per surface rather than per triangle.
+*/
+public class Mesh
+{
+   private double[] pointX, pointY, pointZ;
+   private int numbPoints;
+   private int[] offsets;
+   private int[] indices;
+   private Color[] colors;
+   private int numbSurfaces;
+   private int[] triangles;
+   private int[] triangleOffsets;
+   private int numbTriangles;
+   private double minX, minY, minZ, maxX, maxY, maxZ;
+   private double centerX, centerY, centerZ, radius;
+   private boolean boundsValid;
+   //unit normal of each surface and the offset of its plane, so a point p is in
+   //front of surface i when normal . p + planeOffset[i] > 0
+   private double[] normalX, normalY, normalZ, planeOffset;
+   private double[] centroidX, centroidY, centroidZ;
+   //unit normal of each point, the average of the normals of its surfaces
+   private double[] vertexNormalX, vertexNormalY, vertexNormalZ;
+   //coarser versions of the mesh, made the first time they're asked for
+   private Mesh[] levels;
+   
+   /**
+       Creates an empty mesh that points can be added to.
+   */
+   public Mesh() {
+      pointX = new double[50];
+      pointY = new double[50];
+      pointZ = new double[50];
+      numbPoints = 0;
+      offsets = new int[1];
+      indices = new int[0];
+      colors = new Color[0];
+      numbSurfaces = 0;
+      boundsValid = false;
+      triangulate();
+      computeSurfaces();
+      computeVertexNormals();
+   }
+   
+   /**
+       Creates a mesh from the given arrays, which are used directly rather than
+       copied. The colors hold a packed RGB color for each surface, or are null
+       to leave the surfaces white.
+   */
+   public Mesh(double[] x, double[] y, double[] z, int numbPointsIn,
+               int[] offsetsIn, int[] indicesIn, int[] colorsIn, int numbSurfacesIn) {
+      pointX = x;
+      pointY = y;
+      pointZ = z;
+      numbPoints = numbPointsIn;
+      offsets = offsetsIn;
+      indices = indicesIn;
+      numbSurfaces = numbSurfacesIn;
+      
+      //surfaces of the same color share one Color object
+      colors = new Color[numbSurfaces];
+      Color last = Color.WHITE;
+      for (int i = 0; i < numbSurfaces; i++) {
+         if ((colorsIn != null) && ((colorsIn[i] & 0xFFFFFF) != (last.getRGB() & 0xFFFFFF))) {
+            last = new Color(colorsIn[i]);
+         }
+         colors[i] = (colorsIn != null) ? last : Color.WHITE;
+      }
+      
+      computeBounds();
+      triangulate();
+      computeSurfaces();
+      computeVertexNormals();
+   }
+   
+   /**
+       Loads a mesh from a text .dat file, or from a binary file if the name ends
+       with MeshFile.EXTENSION. Use MeshCache.get to share meshes between models.
+   */
+   public static Mesh load(String fileName) throws IOException {
+      if (fileName.endsWith(MeshFile.EXTENSION)) {
+         return MeshFile.read(fileName);
+      }
+      return DatParser.read(fileName);
+   }
+   
+   /**
+       Returns a copy of the mesh that can be modified without affecting the models
+       sharing this one.
+   */
+   Mesh copy() {
+      Mesh copy = new Mesh();
+      copy.pointX = Arrays.copyOf(pointX, Math.max(numbPoints, 50));
+      copy.pointY = Arrays.copyOf(pointY, Math.max(numbPoints, 50));
+      copy.pointZ = Arrays.copyOf(pointZ, Math.max(numbPoints, 50));
+      copy.numbPoints = numbPoints;
+      copy.offsets = offsets;
+      copy.indices = indices;
+      copy.colors = colors;
+      copy.numbSurfaces = numbSurfaces;
+      copy.triangles = triangles;
+      copy.triangleOffsets = triangleOffsets;
+      copy.numbTriangles = numbTriangles;
+      copy.normalX = normalX;
+      copy.normalY = normalY;
+      copy.normalZ = normalZ;
+      copy.planeOffset = planeOffset;
+      copy.centroidX = centroidX;
+      copy.centroidY = centroidY;
+      copy.centroidZ = centroidZ;
+      copy.vertexNormalX = vertexNormalX;
+      copy.vertexNormalY = vertexNormalY;
+      copy.vertexNormalZ = vertexNormalZ;
+      return copy;
+   }
+   
+   /**
+       Adds a point to a mesh that isn't shared. Only used by the model owning it.
+   */
+   void addPoint(double x, double y, double z) {
+      if (numbPoints == pointX.length) {
+         int capacity = Math.max(50, numbPoints * 2);
+         pointX = Arrays.copyOf(pointX, capacity);
+         pointY = Arrays.copyOf(pointY, capacity);
+         pointZ = Arrays.copyOf(pointZ, capacity);
+      }
+      //the normals may be shared with the mesh this one was copied from, so
+      //they're copied rather than written to, and the new point has none
+      if (numbPoints >= vertexNormalX.length) {
+         vertexNormalX = Arrays.copyOf(vertexNormalX, pointX.length);
+         vertexNormalY = Arrays.copyOf(vertexNormalY, pointX.length);
+         vertexNormalZ = Arrays.copyOf(vertexNormalZ, pointX.length);
+      }
+      pointX[numbPoints] = x;
+      pointY[numbPoints] = y;
+      pointZ[numbPoints] = z;
+      numbPoints++;
+      boundsValid = false;
+      levels = null;
+   }
+   
+   /**
+       Computes the bounding box of the points, and a bounding sphere around the
+       center of the box.
+   */
+   private void computeBounds() {
+      minX = Double.POSITIVE_INFINITY;
+      minY = Double.POSITIVE_INFINITY;
+      minZ = Double.POSITIVE_INFINITY;
+      maxX = Double.NEGATIVE_INFINITY;
+      maxY = Double.NEGATIVE_INFINITY;
+      maxZ = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < numbPoints; i++) {
+         minX = Math.min(minX, pointX[i]);
+         minY = Math.min(minY, pointY[i]);
+         minZ = Math.min(minZ, pointZ[i]);
+         maxX = Math.max(maxX, pointX[i]);
+         maxY = Math.max(maxY, pointY[i]);
+         maxZ = Math.max(maxZ, pointZ[i]);
+      }
+      
+      centerX = (minX + maxX) / 2;
+      centerY = (minY + maxY) / 2;
+      centerZ = (minZ + maxZ) / 2;
+      double radiusSquared = 0;
+      for (int i = 0; i < numbPoints; i++) {
+         double dx = pointX[i] - centerX;
+         double dy = pointY[i] - centerY;
+         double dz = pointZ[i] - centerZ;
+         radiusSquared = Math.max(radiusSquared, (dx * dx) + (dy * dy) + (dz * dz));
+      }
+      radius = Math.sqrt(radiusSquared);
+      boundsValid = true;
+   }
+   
+   /**
+       Splits every surface into triangles. A surface of n points makes n - 2
+       triangles, and one of fewer than three points makes none.
+   */
+   private void triangulate() {
+      triangleOffsets = new int[numbSurfaces + 1];
+      int size = 0;
+      for (int i = 0; i < numbSurfaces; i++) {
+         size += Math.max(0, offsets[i + 1] - offsets[i] - 2);
+      }
+      triangles = new int[size * 3];
+      int position = 0;
+      for (int i = 0; i < numbSurfaces; i++) {
+         triangleOffsets[i] = position / 3;
+         position = Triangulator.triangulate(pointX, pointY, pointZ, indices, offsets[i],
+                                             offsets[i + 1] - offsets[i], triangles, position);
+      }
+      triangleOffsets[numbSurfaces] = position / 3;
+      numbTriangles = position / 3;
+   }
+   
+   /**
+       Computes the normal, plane and centroid of each surface. The normal is the
+       cross product of the edges from the first to the second point and from the
+       second to the third of the first triangle of the surface, the same one the
+       screen coordinates are checked with to find the surfaces facing the camera.
+       For a convex surface those are its first three points. A surface whose
+       first triangle has its points in a line, or that has no triangles, gets a
+       zero normal.
+   */
+   private void computeSurfaces() {
+      normalX = new double[numbSurfaces];
+      normalY = new double[numbSurfaces];
+      normalZ = new double[numbSurfaces];
+      planeOffset = new double[numbSurfaces];
+      centroidX = new double[numbSurfaces];
+      centroidY = new double[numbSurfaces];
+      centroidZ = new double[numbSurfaces];
+      for (int i = 0; i < numbSurfaces; i++) {
+         int start = offsets[i];
+         int end = offsets[i + 1];
+         int a = 0;
+         int b = 0;
+         int c = 0;
+         if (triangleOffsets[i] < triangleOffsets[i + 1]) {
+            a = triangles[triangleOffsets[i] * 3];
+            b = triangles[triangleOffsets[i] * 3 + 1];
+            c = triangles[triangleOffsets[i] * 3 + 2];
+         }
+         double line1X = pointX[b] - pointX[a];
+         double line1Y = pointY[b] - pointY[a];
+         double line1Z = pointZ[b] - pointZ[a];
+         double line2X = pointX[c] - pointX[b];
+         double line2Y = pointY[c] - pointY[b];
+         double line2Z = pointZ[c] - pointZ[b];
+         double x = (line1Y * line2Z) - (line1Z * line2Y);
+         double y = (line1Z * line2X) - (line1X * line2Z);
+         double z = (line1X * line2Y) - (line1Y * line2X);
+         double length = Math.sqrt((x * x) + (y * y) + (z * z));
+         if (length > 0) {
+            x /= length;
+            y /= length;
+            z /= length;
+         }
+         normalX[i] = x;
+         normalY[i] = y;
+         normalZ[i] = z;
+         planeOffset[i] = -((x * pointX[b]) + (y * pointY[b]) + (z * pointZ[b]));
+         
+         double sumX = 0;
+         double sumY = 0;
+         double sumZ = 0;
+         for (int j = start; j < end; j++) {
+            sumX += pointX[indices[j]];
+            sumY += pointY[indices[j]];
+            sumZ += pointZ[indices[j]];
+         }
+         centroidX[i] = sumX / (end - start);
+         centroidY[i] = sumY / (end - start);
+         centroidZ[i] = sumZ / (end - start);
+      }
+   }
+   
+   /**
+       Computes the normal of each point by adding up the normals of the surfaces
+       using it. Points that no surface uses get a zero normal.
+   */
+   private void computeVertexNormals() {
+      vertexNormalX = new double[numbPoints];
+      vertexNormalY = new double[numbPoints];
+      vertexNormalZ = new double[numbPoints];
+      for (int i = 0; i < numbSurfaces; i++) {
+         for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+            vertexNormalX[indices[j]] += normalX[i];
+            vertexNormalY[indices[j]] += normalY[i];
+            vertexNormalZ[indices[j]] += normalZ[i];
+         }
+      }
+      for (int i = 0; i < numbPoints; i++) {
+         double length = Math.sqrt((vertexNormalX[i] * vertexNormalX[i]) + (vertexNormalY[i] * vertexNormalY[i])
+                                   + (vertexNormalZ[i] * vertexNormalZ[i]));
+         if (length > 0) {
+            vertexNormalX[i] /= length;
+            vertexNormalY[i] /= length;
+            vertexNormalZ[i] /= length;
+         }
+      }
+   }
+   
+   /**
+       Returns whether the bounding volume of the mesh is at least partly on the
+       inner side of every one of the given planes. Each plane is 4 values a, b, c
+       and d, and a point is on the inner side when a * x + b * y + c * z + d >= 0.
+       The test is conservative, it can return true for a mesh that only comes
+       close to the corner of two planes.
+       @param planes double[] the planes, 4 values each
+       @param numbPlanes int number of planes
+   */
+   public boolean intersects(double[] planes, int numbPlanes) {
+      if (!boundsValid) {
+         computeBounds();
+      }
+      if (numbPoints == 0) {
+         return false;
+      }
+      
+      for (int i = 0; i < numbPlanes * 4; i += 4) {
+         double a = planes[i];
+         double b = planes[i + 1];
+         double c = planes[i + 2];
+         double d = planes[i + 3];
+         double distance = (a * centerX) + (b * centerY) + (c * centerZ) + d;
+         double scaledRadius = radius * Math.sqrt((a * a) + (b * b) + (c * c));
+         if (distance < -scaledRadius) {
+            return false;
+         }
+         if (distance < scaledRadius) {
+            //the sphere crosses the plane, so the corner of the box farthest
+            //along the plane normal decides
+            double x = (a >= 0) ? maxX : minX;
+            double y = (b >= 0) ? maxY : minY;
+            double z = (c >= 0) ? maxZ : minZ;
+            if ((a * x) + (b * y) + (c * z) + d < 0) {
+               return false;
+            }
+         }
+      }
+      return true;
+   }
+   
+   /**
+       Returns the corner of the bounding box with the smallest coordinates.
+   */
+   public Vector getBoundsMin() {
+      if (!boundsValid) {
+         computeBounds();
+      }
+      return new Vector(minX, minY, minZ);
+   }
+   
+   /**
+       Returns the corner of the bounding box with the largest coordinates.
+   */
+   public Vector getBoundsMax() {
+      if (!boundsValid) {
+         computeBounds();
+      }
+      return new Vector(maxX, maxY, maxZ);
+   }
+   
+   public Vector getBoundingCenter() {
+      if (!boundsValid) {
+         computeBounds();
+      }
+      return new Vector(centerX, centerY, centerZ);
+   }
+   
+   public double getBoundingRadius() {
+      if (!boundsValid) {
+         computeBounds();
+      }
+      return radius;
+   }
+   
+   /**
+       Returns levels of detail of the mesh, starting with the mesh itself and each
+       with about half of the surfaces of the one before. They're made by
+       MeshSimplifier the first time they're asked for and then kept, so every
+       model drawing the mesh shares them.
+   */
+   public synchronized Mesh[] getLevelsOfDetail() {
+      if (levels == null) {
+         levels = MeshSimplifier.buildLevels(this);
+      }
+      return levels;
+   }
+   
+   public int getNumbPoints() {
+      return numbPoints;
+   }
+   
+   public int getNumbSurfaces() {
+      return numbSurfaces;
+   }
+   
+   /**
+       Returns a copy of the given point.
+   */
+   public Vector getPoint(int index) {
+      return new Vector(pointX[index], pointY[index], pointZ[index]);
+   }
+   
+   /**
+       Returns the position of the first index of the given surface in the index array.
+   */
+   public int getSurfaceStart(int surface) {
+      return offsets[surface];
+   }
+   
+   /**
+       Returns the number of points of the given surface.
+   */
+   public int getSurfaceSize(int surface) {
+      return offsets[surface + 1] - offsets[surface];
+   }
+   
+   public int getNumbTriangles() {
+      return numbTriangles;
+   }
+   
+   /**
+       Returns the position of the first triangle of the given surface, counted
+       in triangles rather than indices.
+   */
+   public int getTriangleStart(int surface) {
+      return triangleOffsets[surface];
+   }
+   
+   /**
+       Returns the number of triangles the given surface was split into.
+   */
+   public int getTriangleCount(int surface) {
+      return triangleOffsets[surface + 1] - triangleOffsets[surface];
+   }
+   
+   public Color getColor(int surface) {
+      return colors[surface];
+   }
+   
+   /**
+       Returns the unit normal of the given surface.
+   */
+   public Vector getNormal(int surface) {
+      return new Vector(normalX[surface], normalY[surface], normalZ[surface]);
+   }
+   
+   /**
+       Returns the average of the points of the given surface.
+   */
+   public Vector getCentroid(int surface) {
+      return new Vector(centroidX[surface], centroidY[surface], centroidZ[surface]);
+   }
+   
+   /**
+       Returns the unit normal of the given point, used for smooth shading.
+   */
+   public Vector getVertexNormal(int index) {
+      return new Vector(vertexNormalX[index], vertexNormalY[index], vertexNormalZ[index]);
+   }
+   
+   //direct access to the arrays for the models drawing this mesh, which must not
+   //modify them.
+   double[] getPointX() {
+      return pointX;
+   }
+   
+   double[] getPointY() {
+      return pointY;
+   }
+   
+   double[] getPointZ() {
+      return pointZ;
+   }
+   
+   int[] getIndices() {
+      return indices;
+   }
+   
+   int[] getTriangles() {
+      return triangles;
+   }
+   
+   double[] getNormalX() {
+      return normalX;
+   }
+   
+   double[] getNormalY() {
+      return normalY;
+   }
+   
+   double[] getNormalZ() {
+      return normalZ;
+   }
+   
+   double[] getPlaneOffset() {
+      return planeOffset;
+   }
+   
+   double[] getCentroidX() {
+      return centroidX;
+   }
+   
+   double[] getCentroidY() {
+      return centroidY;
+   }
+   
+   double[] getCentroidZ() {
+      return centroidZ;
+   }
+   
+   double[] getVertexNormalX() {
+      return vertexNormalX;
+   }
+   
+   double[] getVertexNormalY() {
+      return vertexNormalY;
+   }
+   
+   double[] getVertexNormalZ() {
+      return vertexNormalZ;
+   }
+}
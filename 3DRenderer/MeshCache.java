@@ -0,0 +1,51 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+    This class loads each mesh file once and hands the same Mesh to every model
+    that reads the file, so drawing a thousand copies of a model only stores its
+    points and surfaces once. Meshes are kept by the canonical path of their file
+    until they're removed or the cache is cleared.
+*/
+public class MeshCache
+{
+   private static final ConcurrentHashMap<String, Mesh> meshes = new ConcurrentHashMap<String, Mesh>();
+   
+   private MeshCache() {
+   }
+   
+   /**
+       Returns the mesh in the given file, loading it if it isn't in the cache yet.
+       @throws IOException if the file can't be read or is malformed
+   */
+   public static Mesh get(String fileName) throws IOException {
+      String key = new File(fileName).getCanonicalPath();
+      Mesh mesh = meshes.get(key);
+      if (mesh == null) {
+         mesh = Mesh.load(fileName);
+         //if another thread loaded the file at the same time, its mesh is used
+         Mesh existing = meshes.putIfAbsent(key, mesh);
+         if (existing != null) {
+            mesh = existing;
+         }
+      }
+      return mesh;
+   }
+   
+   /**
+       Removes the mesh of the given file, so it's loaded again the next time
+       it's used. Models already using the mesh keep it.
+   */
+   public static void remove(String fileName) throws IOException {
+      meshes.remove(new File(fileName).getCanonicalPath());
+   }
+   
+   public static void clear() {
+      meshes.clear();
+   }
+   
+   public static int size() {
+      return meshes.size();
+   }
+}
@@ -0,0 +1,233 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+    This class reads and writes the binary mesh format, which can be loaded much
+    faster than the text .dat files since nothing has to be parsed. The file is
+    read whole into a buffer on the heap with a plain channel read, and each
+    block is copied straight into the arrays of the mesh. Writing copies the
+    arrays of the mesh into the blocks the same way. The file is closed as soon as
+    it's read, and nothing is left mapped that would keep it locked.
+    
+    All values are little endian. The file starts with a header of 8 ints:
+    the magic number, the version, the number of points, the number of surfaces,
+    the number of surface indices, flags, and two reserved ints. It's followed by
+    the point block, which holds all x coordinates, then all y coordinates and
+    then all z coordinates as doubles, matching the arrays of the mesh. Next is
+    the surface block with the offset of each surface in the index block plus the
+    total, then the index block, and if the colors flag is set the color block
+    with one packed RGB int per surface.
+    
+    Running this class converts .dat files:
+       java MeshFile input/sphereGen3.dat [more files...]
+    writes input/sphereGen3.mesh and so on. The meshes are optimized by the
+    MeshOptimizer on the way, welding points closer than the tolerance given
+    with -tolerance, or MeshOptimizer.DEFAULT_TOLERANCE.
+*/
+public class MeshFile
+{
+   public static final String EXTENSION = ".mesh";
+   
+   //"R3DM" in ASCII
+   public static final int MAGIC = 0x5233444D;
+   public static final int VERSION = 1;
+   public static final int FLAG_COLORS = 1;
+   
+   private static final int HEADER_SIZE = 8 * 4;
+   
+   private MeshFile() {
+   }
+   
+   /**
+       Loads the mesh in the given file.
+       @param fileName String path of the mesh file
+       @return Mesh the points, surfaces and colors of the file
+       @throws IOException if the file can't be read or isn't a valid mesh file
+   */
+   public static Mesh read(String fileName) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(fileName, "r");
+      try {
+         FileChannel channel = file.getChannel();
+         long size = channel.size();
+         if (size < HEADER_SIZE) {
+            throw new IOException(fileName + ": too short for a mesh file");
+         }
+         if (size > Integer.MAX_VALUE) {
+            throw new IOException(fileName + ": too large for a mesh file");
+         }
+         ByteBuffer buffer = ByteBuffer.allocate((int)size);
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+               throw new IOException(fileName + ": ended while being read");
+            }
+         }
+         buffer.flip();
+         buffer.order(ByteOrder.LITTLE_ENDIAN);
+         
+         int magic = buffer.getInt();
+         int version = buffer.getInt();
+         int numbPoints = buffer.getInt();
+         int numbSurfaces = buffer.getInt();
+         int numbIndices = buffer.getInt();
+         int flags = buffer.getInt();
+         buffer.getInt();
+         buffer.getInt();
+         
+         if (magic != MAGIC) {
+            throw new IOException(fileName + ": not a mesh file");
+         }
+         if (version != VERSION) {
+            throw new IOException(fileName + ": unsupported mesh version " + version);
+         }
+         if ((numbPoints < 0) || (numbSurfaces < 0) || (numbIndices < 0)) {
+            throw new IOException(fileName + ": invalid counts in header");
+         }
+         boolean hasColors = (flags & FLAG_COLORS) != 0;
+         long expected = HEADER_SIZE + (numbPoints * 3L * 8) + ((numbSurfaces + 1L) * 4)
+                         + (numbIndices * 4L) + (hasColors ? numbSurfaces * 4L : 0);
+         if (size != expected) {
+            throw new IOException(fileName + ": expected " + expected + " bytes but the file has " + size);
+         }
+         
+         double[] x = new double[numbPoints];
+         double[] y = new double[numbPoints];
+         double[] z = new double[numbPoints];
+         buffer.asDoubleBuffer().get(x).get(y).get(z);
+         buffer.position(buffer.position() + (numbPoints * 3 * 8));
+         
+         int[] offsets = new int[numbSurfaces + 1];
+         int[] indices = new int[numbIndices];
+         IntBuffer ints = buffer.asIntBuffer();
+         ints.get(offsets);
+         ints.get(indices);
+         
+         if ((offsets[0] != 0) || (offsets[numbSurfaces] != numbIndices)) {
+            throw new IOException(fileName + ": surface offsets don't match the index block");
+         }
+         for (int i = 0; i < numbSurfaces; i++) {
+            if (offsets[i + 1] - offsets[i] < 3) {
+               throw new IOException(fileName + ": surface " + i + " has less than 3 points");
+            }
+         }
+         for (int i = 0; i < numbIndices; i++) {
+            if ((indices[i] < 0) || (indices[i] >= numbPoints)) {
+               throw new IOException(fileName + ": point index " + indices[i] + " out of range");
+            }
+         }
+         
+         int[] colors = null;
+         if (hasColors) {
+            colors = new int[numbSurfaces];
+            ints.get(colors);
+         }
+         
+         return new Mesh(x, y, z, numbPoints, offsets, indices, colors, numbSurfaces);
+      }
+      finally {
+         file.close();
+      }
+   }
+   
+   /**
+       Writes the points, surfaces and colors of the mesh to a mesh file.
+       @param mesh Mesh to write
+       @param fileName String path of the mesh file
+       @throws IOException if the file can't be written
+   */
+   public static void write(Mesh mesh, String fileName) throws IOException {
+      int numbPoints = mesh.getNumbPoints();
+      int numbSurfaces = mesh.getNumbSurfaces();
+      int numbIndices = mesh.getSurfaceStart(numbSurfaces);
+      
+      long size = HEADER_SIZE + (numbPoints * 3L * 8) + ((numbSurfaces + 1L) * 4)
+                  + (numbIndices * 4L) + (numbSurfaces * 4L);
+      if (size > Integer.MAX_VALUE) {
+         throw new IOException(fileName + ": mesh too large");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int)size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(numbPoints);
+      buffer.putInt(numbSurfaces);
+      buffer.putInt(numbIndices);
+      buffer.putInt(FLAG_COLORS);
+      buffer.putInt(0);
+      buffer.putInt(0);
+      
+      buffer.asDoubleBuffer().put(mesh.getPointX(), 0, numbPoints).put(mesh.getPointY(), 0, numbPoints)
+            .put(mesh.getPointZ(), 0, numbPoints);
+      buffer.position(buffer.position() + (numbPoints * 3 * 8));
+      
+      for (int i = 0; i <= numbSurfaces; i++) {
+         buffer.putInt(mesh.getSurfaceStart(i));
+      }
+      buffer.asIntBuffer().put(mesh.getIndices(), 0, numbIndices);
+      buffer.position(buffer.position() + (numbIndices * 4));
+      
+      for (int i = 0; i < numbSurfaces; i++) {
+         buffer.putInt(mesh.getColor(i).getRGB() & 0xFFFFFF);
+      }
+      
+      buffer.flip();
+      RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+      try {
+         file.setLength(0);
+         FileChannel channel = file.getChannel();
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+      }
+      finally {
+         file.close();
+      }
+   }
+   
+   /**
+       Converts each given .dat file into an optimized mesh file next to it.
+   */
+   public static void main(String[] args) {
+      double tolerance = MeshOptimizer.DEFAULT_TOLERANCE;
+      int first = 0;
+      if ((args.length >= 2) && args[0].equals("-tolerance")) {
+         try {
+            tolerance = Double.parseDouble(args[1]);
+         }
+         catch (NumberFormatException e) {
+            tolerance = -1;
+         }
+         first = 2;
+      }
+      if ((args.length == first) || !(tolerance >= 0)) {
+         System.out.println("Usage: java MeshFile [-tolerance distance] file.dat [more files...]");
+         System.exit(1);
+      }
+      
+      for (int i = first; i < args.length; i++) {
+         String input = args[i];
+         String output = input;
+         if (output.endsWith(".dat")) {
+            output = output.substring(0, output.length() - 4);
+         }
+         output += EXTENSION;
+         
+         try {
+            Mesh mesh = Mesh.load(input);
+            Mesh optimized = MeshOptimizer.optimize(mesh, tolerance);
+            write(optimized, output);
+            System.out.println(input + " -> " + output + " (" + mesh.getNumbPoints() + " -> "
+                               + optimized.getNumbPoints() + " points, " + optimized.getNumbSurfaces()
+                               + " surfaces, " + new File(output).length() + " bytes)");
+         }
+         catch (IOException e) {
+            System.out.println("Invalid File: " + e.getMessage());
+         }
+      }
+   }
+}
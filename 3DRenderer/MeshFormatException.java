@@ -0,0 +1,31 @@
+import java.io.IOException;
+
+/**
+    This exception is thrown when a model file can't be loaded because its
+    contents are malformed. The message names the file and the line of the
+    problem, like "input/cube.dat:12: expected 3 coordinates but found 2".
+*/
+public class MeshFormatException extends IOException
+{
+   private static final long serialVersionUID = 1L;
+   
+   private String fileName;
+   private int line;
+   
+   public MeshFormatException(String fileNameIn, int lineIn, String message) {
+      super(fileNameIn + ":" + lineIn + ": " + message);
+      fileName = fileNameIn;
+      line = lineIn;
+   }
+   
+   public String getFileName() {
+      return fileName;
+   }
+   
+   /**
+       Returns the line of the problem, counting from 1.
+   */
+   public int getLine() {
+      return line;
+   }
+}
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+    This class rearranges a mesh so drawing it touches memory in order. It's run
+    by the MeshFile converter, so the binary files are stored already optimized.
+    
+    First points closer together than a tolerance are welded into one, which
+    removes the duplicate points generated meshes have along their seams, and
+    surfaces left with fewer than three points are removed. Then the surfaces
+    are put in the order of the Tipsify algorithm of Sander, Nehab and Barczak,
+    which fans out from one point at a time, taking every surface around it
+    before moving on to a point used by those surfaces that is still likely to
+    be cached. Finally the points are numbered in the order the surfaces first
+    use them, so the transformed points of surfaces drawn one after another are
+    next to each other in the arrays of the model. Points no surface uses are
+    dropped.
+*/
+public class MeshOptimizer
+{
+   /**
+       Default distance within which points are welded.
+   */
+   public static final double DEFAULT_TOLERANCE = 1e-6;
+   
+   //number of recently used points taken to still be cached when ordering
+   private static final int CACHE_SIZE = 32;
+   
+   private MeshOptimizer() {
+   }
+   
+   /**
+       Returns an optimized copy of the given mesh, which isn't modified.
+       @param mesh Mesh to optimize
+       @param tolerance double largest distance between points that are welded,
+                        or 0 to only weld points at exactly the same position
+   */
+   public static Mesh optimize(Mesh mesh, double tolerance) {
+      double[] x = mesh.getPointX();
+      double[] y = mesh.getPointY();
+      double[] z = mesh.getPointZ();
+      int numbPoints = mesh.getNumbPoints();
+      int[] welded = weld(x, y, z, numbPoints, tolerance);
+      
+      //the surfaces with the welded indices, without the ones that fall apart
+      int[] meshIndices = mesh.getIndices();
+      int[] offsets = new int[mesh.getNumbSurfaces() + 1];
+      int[] indices = new int[meshIndices.length];
+      int[] colors = new int[mesh.getNumbSurfaces()];
+      int numbSurfaces = 0;
+      int numbIndices = 0;
+      for (int i = 0; i < mesh.getNumbSurfaces(); i++) {
+         int start = mesh.getSurfaceStart(i);
+         int[] surface = new int[mesh.getSurfaceSize(i)];
+         for (int j = 0; j < surface.length; j++) {
+            surface[j] = welded[meshIndices[start + j]];
+         }
+         surface = removeRepeats(surface, surface.length);
+         if (surface.length >= 3) {
+            System.arraycopy(surface, 0, indices, numbIndices, surface.length);
+            offsets[numbSurfaces] = numbIndices;
+            colors[numbSurfaces] = mesh.getColor(i).getRGB();
+            numbSurfaces++;
+            numbIndices += surface.length;
+         }
+      }
+      offsets[numbSurfaces] = numbIndices;
+      
+      int[] order = orderSurfaces(offsets, indices, numbSurfaces, numbPoints);
+      
+      //copies the surfaces in their new order, numbering the points as they're met
+      int[] newIndex = new int[numbPoints];
+      for (int i = 0; i < numbPoints; i++) {
+         newIndex[i] = -1;
+      }
+      double[] newX = new double[numbPoints];
+      double[] newY = new double[numbPoints];
+      double[] newZ = new double[numbPoints];
+      int[] newOffsets = new int[numbSurfaces + 1];
+      int[] newIndices = new int[numbIndices];
+      int[] newColors = new int[numbSurfaces];
+      int numbNewPoints = 0;
+      int position = 0;
+      for (int i = 0; i < numbSurfaces; i++) {
+         int surface = order[i];
+         newOffsets[i] = position;
+         newColors[i] = colors[surface];
+         for (int j = offsets[surface]; j < offsets[surface + 1]; j++) {
+            int point = indices[j];
+            if (newIndex[point] < 0) {
+               newIndex[point] = numbNewPoints;
+               newX[numbNewPoints] = x[point];
+               newY[numbNewPoints] = y[point];
+               newZ[numbNewPoints] = z[point];
+               numbNewPoints++;
+            }
+            newIndices[position] = newIndex[point];
+            position++;
+         }
+      }
+      newOffsets[numbSurfaces] = position;
+      
+      return new Mesh(newX, newY, newZ, numbNewPoints, newOffsets, newIndices, newColors, numbSurfaces);
+   }
+   
+   /**
+       Returns the point each point is welded into, which is the first point
+       found within the tolerance of it, so never a later point. Points are
+       hashed into a grid of cells as large as the tolerance, so only the points
+       in the cells around a point have to be compared with it. MeshSimplifier
+       uses it with no tolerance to merge points at the same position.
+   */
+   static int[] weld(double[] x, double[] y, double[] z, int numbPoints, double tolerance) {
+      int[] welded = new int[numbPoints];
+      //the first point kept in each cell, and the next point kept in the same
+      //cell after each point, or -1
+      HashMap<Long, Integer> cells = new HashMap<Long, Integer>();
+      int[] next = new int[numbPoints];
+      double toleranceSquared = tolerance * tolerance;
+      int reach = (tolerance > 0) ? 1 : 0;
+      
+      for (int i = 0; i < numbPoints; i++) {
+         long cellX = cell(x[i], tolerance);
+         long cellY = cell(y[i], tolerance);
+         long cellZ = cell(z[i], tolerance);
+         int found = -1;
+         for (int dx = -reach; (dx <= reach) && (found < 0); dx++) {
+            for (int dy = -reach; (dy <= reach) && (found < 0); dy++) {
+               for (int dz = -reach; (dz <= reach) && (found < 0); dz++) {
+                  Integer first = cells.get(key(cellX + dx, cellY + dy, cellZ + dz));
+                  for (int j = (first == null) ? -1 : first; (j >= 0) && (found < 0); j = next[j]) {
+                     double distanceX = x[j] - x[i];
+                     double distanceY = y[j] - y[i];
+                     double distanceZ = z[j] - z[i];
+                     if ((distanceX * distanceX) + (distanceY * distanceY) + (distanceZ * distanceZ)
+                         <= toleranceSquared) {
+                        found = j;
+                     }
+                  }
+               }
+            }
+         }
+         
+         if (found >= 0) {
+            welded[i] = welded[found];
+         }
+         else {
+            welded[i] = i;
+            Long key = key(cellX, cellY, cellZ);
+            Integer first = cells.get(key);
+            next[i] = (first == null) ? -1 : first;
+            cells.put(key, i);
+         }
+      }
+      return welded;
+   }
+   
+   /**
+       Returns the cell a coordinate is in, or with no tolerance the coordinate
+       itself, so only equal coordinates share a cell.
+   */
+   private static long cell(double coordinate, double tolerance) {
+      if (tolerance > 0) {
+         return (long)Math.floor(coordinate / tolerance);
+      }
+      return Double.doubleToLongBits(coordinate + 0.0);
+   }
+   
+   /**
+       Returns the hash key of a cell. Different cells can share a key, which only
+       means more points are compared.
+   */
+   private static Long key(long cellX, long cellY, long cellZ) {
+      return (cellX * 73856093L) ^ (cellY * 19349663L) ^ (cellZ * 83492791L);
+   }
+   
+   /**
+       Returns the points of the surface without points repeated next to each
+       other, wrapping around from the last point to the first.
+   */
+   static int[] removeRepeats(int[] surface, int length) {
+      int kept = 0;
+      int[] result = new int[length];
+      for (int i = 0; i < length; i++) {
+         if ((kept == 0) || (result[kept - 1] != surface[i])) {
+            result[kept] = surface[i];
+            kept++;
+         }
+      }
+      while ((kept > 1) && (result[kept - 1] == result[0])) {
+         kept--;
+      }
+      return (kept == length) ? result : Arrays.copyOf(result, kept);
+   }
+   
+   /**
+       Returns the surfaces in the order they should be drawn in, by the Tipsify
+       algorithm. Each point remembers when it was last taken into the cache and
+       how many surfaces still to be placed use it.
+   */
+   private static int[] orderSurfaces(int[] offsets, int[] indices, int numbSurfaces, int numbPoints) {
+      int numbIndices = offsets[numbSurfaces];
+      
+      //the surfaces using each point, those of point i from pointOffsets[i] up
+      //to pointOffsets[i + 1]
+      int[] live = new int[numbPoints];
+      for (int i = 0; i < numbIndices; i++) {
+         live[indices[i]]++;
+      }
+      int[] pointOffsets = new int[numbPoints + 1];
+      for (int i = 0; i < numbPoints; i++) {
+         pointOffsets[i + 1] = pointOffsets[i] + live[i];
+      }
+      int[] pointSurfaces = new int[numbIndices];
+      int[] filled = new int[numbPoints];
+      for (int i = 0; i < numbSurfaces; i++) {
+         for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+            int point = indices[j];
+            pointSurfaces[pointOffsets[point] + filled[point]] = i;
+            filled[point]++;
+         }
+      }
+      
+      int[] order = new int[numbSurfaces];
+      int numbOrdered = 0;
+      boolean[] placed = new boolean[numbSurfaces];
+      int[] cacheTime = new int[numbPoints];
+      int time = CACHE_SIZE + 1;
+      //points of the placed surfaces, to go back to when a fan ends with no
+      //cached point left to go on from
+      int[] deadEnds = new int[numbIndices];
+      int numbDeadEnds = 0;
+      int[] candidates = new int[numbIndices];
+      int cursor = 0;
+      
+      int fan = nextLivePoint(live, 0);
+      while (fan >= 0) {
+         int numbCandidates = 0;
+         for (int i = pointOffsets[fan]; i < pointOffsets[fan + 1]; i++) {
+            int surface = pointSurfaces[i];
+            if (placed[surface]) {
+               continue;
+            }
+            placed[surface] = true;
+            order[numbOrdered] = surface;
+            numbOrdered++;
+            for (int j = offsets[surface]; j < offsets[surface + 1]; j++) {
+               int point = indices[j];
+               deadEnds[numbDeadEnds] = point;
+               numbDeadEnds++;
+               candidates[numbCandidates] = point;
+               numbCandidates++;
+               live[point]--;
+               if (time - cacheTime[point] > CACHE_SIZE) {
+                  cacheTime[point] = time;
+                  time++;
+               }
+            }
+         }
+         
+         //goes on from the point still in use that was cached the longest ago,
+         //as long as it will stay cached while its surfaces are added
+         fan = -1;
+         int best = -1;
+         for (int i = 0; i < numbCandidates; i++) {
+            int point = candidates[i];
+            if (live[point] > 0) {
+               int priority = 0;
+               if (time - cacheTime[point] + (2 * live[point]) <= CACHE_SIZE) {
+                  priority = time - cacheTime[point];
+               }
+               if (priority > best) {
+                  best = priority;
+                  fan = point;
+               }
+            }
+         }
+         while ((fan < 0) && (numbDeadEnds > 0)) {
+            numbDeadEnds--;
+            if (live[deadEnds[numbDeadEnds]] > 0) {
+               fan = deadEnds[numbDeadEnds];
+            }
+         }
+         if (fan < 0) {
+            cursor = nextLivePoint(live, cursor);
+            fan = cursor;
+         }
+      }
+      return order;
+   }
+   
+   /**
+       Returns the first point from the given one on still used by a surface that
+       hasn't been placed, or -1 if there are none.
+   */
+   private static int nextLivePoint(int[] live, int from) {
+      for (int i = from; i < live.length; i++) {
+         if (live[i] > 0) {
+            return i;
+         }
+      }
+      return -1;
+   }
+}
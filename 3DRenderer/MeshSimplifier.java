@@ -0,0 +1,504 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+    This class makes coarser versions of a mesh by collapsing edges, always
+    picking the edge whose collapse moves the surface the least. How far a point
+    has moved from the surface is measured with the quadric error of Garland and
+    Heckbert: every point keeps the sum of the squared distances to the planes of
+    the surfaces around it, which adds up as points are merged.
+    
+    A collapsed edge ends at one of its points or halfway between them, so the
+    coarser meshes stay inside the bounds of the original. Collapses that would
+    flip a surface over are skipped, and the open edges of a mesh get extra planes
+    that keep them from pulling in. Points at the same position are merged first,
+    so surfaces meeting at a seam of duplicate points aren't torn apart.
+*/
+public class MeshSimplifier
+{
+   //levels of detail stop when a level would have fewer surfaces than this
+   private static final int MIN_SURFACES = 16;
+   //weight of the planes keeping open edges in place
+   private static final double BOUNDARY_WEIGHT = 100;
+   
+   private double[] pointX, pointY, pointZ;
+   //symmetric 4x4 quadric of each point as aa, ab, ac, ad, bb, bc, bd, cc, cd, dd
+   private double[] quadrics;
+   private int[] versions;
+   private boolean[] removedPoints;
+   private int[][] pointSurfaces;
+   private int[] numbPointSurfaces;
+   
+   private int[][] surfaces;
+   private int[] colors;
+   private boolean[] removedSurfaces;
+   private int numbSurfaces;
+   
+   private PriorityQueue<Collapse> collapses;
+   private double[] normal;
+   
+   /**
+       Returns levels of detail of the given mesh, starting with the mesh itself
+       and each with about half of the surfaces of the one before.
+   */
+   public static Mesh[] buildLevels(Mesh mesh) {
+      ArrayList<Mesh> levels = new ArrayList<Mesh>();
+      levels.add(mesh);
+      Mesh level = mesh;
+      while (level.getNumbSurfaces() / 2 >= MIN_SURFACES) {
+         Mesh next = simplify(level, level.getNumbSurfaces() / 2);
+         //stops once collapses are mostly being skipped
+         if (next.getNumbSurfaces() > level.getNumbSurfaces() * 3 / 4) {
+            break;
+         }
+         levels.add(next);
+         level = next;
+      }
+      return levels.toArray(new Mesh[levels.size()]);
+   }
+   
+   /**
+       Returns a copy of the mesh with edges collapsed until it has no more than
+       the given number of surfaces, or until no edge can be collapsed. Surfaces
+       keep their colors.
+   */
+   public static Mesh simplify(Mesh mesh, int targetSurfaces) {
+      MeshSimplifier simplifier = new MeshSimplifier(mesh);
+      simplifier.collapse(targetSurfaces);
+      return simplifier.toMesh();
+   }
+   
+   private MeshSimplifier(Mesh mesh) {
+      normal = new double[3];
+      
+      //points at the same position become one point
+      double[] x = mesh.getPointX();
+      double[] y = mesh.getPointY();
+      double[] z = mesh.getPointZ();
+      int[] welded = MeshOptimizer.weld(x, y, z, mesh.getNumbPoints(), 0);
+      int[] merged = new int[mesh.getNumbPoints()];
+      pointX = new double[mesh.getNumbPoints()];
+      pointY = new double[mesh.getNumbPoints()];
+      pointZ = new double[mesh.getNumbPoints()];
+      int numbPoints = 0;
+      for (int i = 0; i < mesh.getNumbPoints(); i++) {
+         if (welded[i] == i) {
+            merged[i] = numbPoints;
+            pointX[numbPoints] = x[i];
+            pointY[numbPoints] = y[i];
+            pointZ[numbPoints] = z[i];
+            numbPoints++;
+         }
+         else {
+            merged[i] = merged[welded[i]];
+         }
+      }
+      
+      numbSurfaces = mesh.getNumbSurfaces();
+      surfaces = new int[numbSurfaces][];
+      colors = new int[numbSurfaces];
+      removedSurfaces = new boolean[numbSurfaces];
+      int[] indices = mesh.getIndices();
+      for (int i = 0; i < mesh.getNumbSurfaces(); i++) {
+         int start = mesh.getSurfaceStart(i);
+         int[] surface = new int[mesh.getSurfaceSize(i)];
+         for (int j = 0; j < surface.length; j++) {
+            surface[j] = merged[indices[start + j]];
+         }
+         surfaces[i] = MeshOptimizer.removeRepeats(surface, surface.length);
+         colors[i] = mesh.getColor(i).getRGB();
+         if (surfaces[i].length < 3) {
+            removedSurfaces[i] = true;
+            numbSurfaces--;
+         }
+      }
+      
+      versions = new int[numbPoints];
+      removedPoints = new boolean[numbPoints];
+      pointSurfaces = new int[numbPoints][];
+      numbPointSurfaces = new int[numbPoints];
+      for (int i = 0; i < numbPoints; i++) {
+         pointSurfaces[i] = new int[4];
+      }
+      for (int i = 0; i < surfaces.length; i++) {
+         if (!removedSurfaces[i]) {
+            for (int j = 0; j < surfaces[i].length; j++) {
+               addPointSurface(surfaces[i][j], i);
+            }
+         }
+      }
+      
+      computeQuadrics(numbPoints);
+      
+      collapses = new PriorityQueue<Collapse>();
+      for (int i = 0; i < surfaces.length; i++) {
+         if (!removedSurfaces[i]) {
+            int[] surface = surfaces[i];
+            for (int j = 0; j < surface.length; j++) {
+               int a = surface[j];
+               int b = surface[(j + 1) % surface.length];
+               //each edge is usually in two surfaces, but only needs adding once
+               if (a < b || !hasEdge(b, a)) {
+                  addCollapse(a, b);
+               }
+            }
+         }
+      }
+   }
+   
+   /**
+       Adds the plane of each surface to the quadrics of its points, weighted by
+       the area of the surface, and the planes along the open edges.
+   */
+   private void computeQuadrics(int numbPoints) {
+      quadrics = new double[numbPoints * 10];
+      HashMap<Long, Integer> edgeCounts = new HashMap<Long, Integer>();
+      for (int i = 0; i < surfaces.length; i++) {
+         if (removedSurfaces[i]) {
+            continue;
+         }
+         int[] surface = surfaces[i];
+         for (int j = 0; j < surface.length; j++) {
+            Long edge = edgeKey(surface[j], surface[(j + 1) % surface.length]);
+            Integer count = edgeCounts.get(edge);
+            edgeCounts.put(edge, (count == null) ? 1 : count + 1);
+         }
+         surfaceNormal(surface, -1, -1, 0, 0, 0, normal);
+         double area = Math.sqrt((normal[0] * normal[0]) + (normal[1] * normal[1]) + (normal[2] * normal[2]));
+         if (area == 0) {
+            continue;
+         }
+         double a = normal[0] / area;
+         double b = normal[1] / area;
+         double c = normal[2] / area;
+         double d = -((a * pointX[surface[0]]) + (b * pointY[surface[0]]) + (c * pointZ[surface[0]]));
+         for (int j = 0; j < surface.length; j++) {
+            addPlane(surface[j], a, b, c, d, area / 2);
+         }
+      }
+      
+      for (int i = 0; i < surfaces.length; i++) {
+         if (removedSurfaces[i]) {
+            continue;
+         }
+         int[] surface = surfaces[i];
+         surfaceNormal(surface, -1, -1, 0, 0, 0, normal);
+         for (int j = 0; j < surface.length; j++) {
+            int p = surface[j];
+            int q = surface[(j + 1) % surface.length];
+            if (edgeCounts.get(edgeKey(p, q)) != 1) {
+               continue;
+            }
+            //plane through the edge, perpendicular to the surface
+            double edgeX = pointX[q] - pointX[p];
+            double edgeY = pointY[q] - pointY[p];
+            double edgeZ = pointZ[q] - pointZ[p];
+            double a = (edgeY * normal[2]) - (edgeZ * normal[1]);
+            double b = (edgeZ * normal[0]) - (edgeX * normal[2]);
+            double c = (edgeX * normal[1]) - (edgeY * normal[0]);
+            double length = Math.sqrt((a * a) + (b * b) + (c * c));
+            if (length == 0) {
+               continue;
+            }
+            a /= length;
+            b /= length;
+            c /= length;
+            double d = -((a * pointX[p]) + (b * pointY[p]) + (c * pointZ[p]));
+            double weight = BOUNDARY_WEIGHT * ((edgeX * edgeX) + (edgeY * edgeY) + (edgeZ * edgeZ));
+            addPlane(p, a, b, c, d, weight);
+            addPlane(q, a, b, c, d, weight);
+         }
+      }
+   }
+   
+   private void addPlane(int point, double a, double b, double c, double d, double weight) {
+      int q = point * 10;
+      quadrics[q] += weight * a * a;
+      quadrics[q + 1] += weight * a * b;
+      quadrics[q + 2] += weight * a * c;
+      quadrics[q + 3] += weight * a * d;
+      quadrics[q + 4] += weight * b * b;
+      quadrics[q + 5] += weight * b * c;
+      quadrics[q + 6] += weight * b * d;
+      quadrics[q + 7] += weight * c * c;
+      quadrics[q + 8] += weight * c * d;
+      quadrics[q + 9] += weight * d * d;
+   }
+   
+   private static Long edgeKey(int a, int b) {
+      return (Math.min(a, b) * 0x100000000L) + Math.max(a, b);
+   }
+   
+   /**
+       Returns the sum of the squared distances of the given position to the
+       planes in the quadric of the point.
+   */
+   private double error(int point, double x, double y, double z) {
+      int q = point * 10;
+      return (quadrics[q] * x * x) + (2 * quadrics[q + 1] * x * y) + (2 * quadrics[q + 2] * x * z)
+             + (2 * quadrics[q + 3] * x) + (quadrics[q + 4] * y * y) + (2 * quadrics[q + 5] * y * z)
+             + (2 * quadrics[q + 6] * y) + (quadrics[q + 7] * z * z) + (2 * quadrics[q + 8] * z)
+             + quadrics[q + 9];
+   }
+   
+   /**
+       Queues the collapse of the edge between the given points, ending at
+       whichever of the points or their midpoint has the smallest error.
+   */
+   private void addCollapse(int p, int q) {
+      Collapse collapse = new Collapse();
+      collapse.from = p;
+      collapse.to = q;
+      collapse.fromVersion = versions[p];
+      collapse.toVersion = versions[q];
+      collapse.cost = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < 3; i++) {
+         double t = i / 2.0;
+         double x = pointX[p] + ((pointX[q] - pointX[p]) * t);
+         double y = pointY[p] + ((pointY[q] - pointY[p]) * t);
+         double z = pointZ[p] + ((pointZ[q] - pointZ[p]) * t);
+         double cost = error(p, x, y, z) + error(q, x, y, z);
+         if (cost < collapse.cost) {
+            collapse.cost = cost;
+            collapse.x = x;
+            collapse.y = y;
+            collapse.z = z;
+         }
+      }
+      collapses.add(collapse);
+   }
+   
+   /**
+       Collapses edges until there are no more than the given number of surfaces.
+   */
+   private void collapse(int targetSurfaces) {
+      while ((numbSurfaces > targetSurfaces) && !collapses.isEmpty()) {
+         Collapse collapse = collapses.poll();
+         int from = collapse.from;
+         int to = collapse.to;
+         //the points have changed since the collapse was queued
+         if (removedPoints[from] || removedPoints[to]
+             || (versions[from] != collapse.fromVersion) || (versions[to] != collapse.toVersion)) {
+            continue;
+         }
+         if (!flipsSurface(from, to, collapse) && !flipsSurface(to, from, collapse)) {
+            apply(from, to, collapse);
+         }
+      }
+   }
+   
+   /**
+       Returns whether merging the points at the position of the collapse would
+       turn one of the surfaces of the first point over, or leave it with no area.
+       Surfaces removed by the collapse aren't checked.
+   */
+   private boolean flipsSurface(int point, int other, Collapse collapse) {
+      for (int i = 0; i < numbPointSurfaces[point]; i++) {
+         int index = pointSurfaces[point][i];
+         int[] surface = surfaces[index];
+         if (removedSurfaces[index] || (collapsedSize(surface, point, other) < 3)) {
+            continue;
+         }
+         surfaceNormal(surface, -1, -1, 0, 0, 0, normal);
+         double oldX = normal[0];
+         double oldY = normal[1];
+         double oldZ = normal[2];
+         surfaceNormal(surface, point, other, collapse.x, collapse.y, collapse.z, normal);
+         if ((oldX * normal[0]) + (oldY * normal[1]) + (oldZ * normal[2]) <= 0) {
+            return true;
+         }
+      }
+      return false;
+   }
+   
+   /**
+       Returns the number of distinct points the surface is left with after the
+       given points are merged.
+   */
+   private static int collapsedSize(int[] surface, int a, int b) {
+      boolean hasA = false;
+      boolean hasB = false;
+      for (int i = 0; i < surface.length; i++) {
+         hasA |= surface[i] == a;
+         hasB |= surface[i] == b;
+      }
+      return (hasA && hasB) ? surface.length - 1 : surface.length;
+   }
+   
+   /**
+       Moves the second point to the position of the collapse, replaces the first
+       point with it in every surface, and queues the edges around it again.
+   */
+   private void apply(int from, int to, Collapse collapse) {
+      pointX[to] = collapse.x;
+      pointY[to] = collapse.y;
+      pointZ[to] = collapse.z;
+      for (int i = 0; i < 10; i++) {
+         quadrics[to * 10 + i] += quadrics[from * 10 + i];
+      }
+      removedPoints[from] = true;
+      versions[from]++;
+      versions[to]++;
+      
+      for (int i = 0; i < numbPointSurfaces[from]; i++) {
+         int index = pointSurfaces[from][i];
+         if (removedSurfaces[index]) {
+            continue;
+         }
+         int[] surface = surfaces[index];
+         boolean hadTo = false;
+         for (int j = 0; j < surface.length; j++) {
+            hadTo |= surface[j] == to;
+            if (surface[j] == from) {
+               surface[j] = to;
+            }
+         }
+         surfaces[index] = MeshOptimizer.removeRepeats(surface, surface.length);
+         if (surfaces[index].length < 3) {
+            removedSurfaces[index] = true;
+            numbSurfaces--;
+         }
+         else if (!hadTo) {
+            addPointSurface(to, index);
+         }
+      }
+      numbPointSurfaces[from] = 0;
+      
+      //surfaces removed here are dropped from the merged point, other points skip
+      //them when they come across them
+      int kept = 0;
+      for (int i = 0; i < numbPointSurfaces[to]; i++) {
+         if (!removedSurfaces[pointSurfaces[to][i]]) {
+            pointSurfaces[to][kept] = pointSurfaces[to][i];
+            kept++;
+         }
+      }
+      numbPointSurfaces[to] = kept;
+      for (int i = 0; i < numbPointSurfaces[to]; i++) {
+         int[] surface = surfaces[pointSurfaces[to][i]];
+         for (int j = 0; j < surface.length; j++) {
+            if (surface[j] == to) {
+               addCollapse(to, surface[(j + 1) % surface.length]);
+               addCollapse(to, surface[(j + surface.length - 1) % surface.length]);
+            }
+         }
+      }
+   }
+   
+   private void addPointSurface(int point, int surface) {
+      if (numbPointSurfaces[point] == pointSurfaces[point].length) {
+         pointSurfaces[point] = Arrays.copyOf(pointSurfaces[point], numbPointSurfaces[point] * 2);
+      }
+      pointSurfaces[point][numbPointSurfaces[point]] = surface;
+      numbPointSurfaces[point]++;
+   }
+   
+   /**
+       Returns whether a surface of the first point goes from it to the second.
+   */
+   private boolean hasEdge(int a, int b) {
+      for (int i = 0; i < numbPointSurfaces[a]; i++) {
+         int[] surface = surfaces[pointSurfaces[a][i]];
+         for (int j = 0; j < surface.length; j++) {
+            if ((surface[j] == a) && (surface[(j + 1) % surface.length] == b)) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+   
+   /**
+       Stores the normal of the surface in the given array, with a length of twice
+       the area of the surface. The two given points are taken to be at the given
+       position instead of their own.
+   */
+   private void surfaceNormal(int[] surface, int movedA, int movedB, double movedX, double movedY, double movedZ,
+                              double[] out) {
+      double x = 0;
+      double y = 0;
+      double z = 0;
+      for (int i = 0; i < surface.length; i++) {
+         int a = surface[i];
+         int b = surface[(i + 1) % surface.length];
+         boolean aMoved = (a == movedA) || (a == movedB);
+         boolean bMoved = (b == movedA) || (b == movedB);
+         double ax = aMoved ? movedX : pointX[a];
+         double ay = aMoved ? movedY : pointY[a];
+         double az = aMoved ? movedZ : pointZ[a];
+         double bx = bMoved ? movedX : pointX[b];
+         double by = bMoved ? movedY : pointY[b];
+         double bz = bMoved ? movedZ : pointZ[b];
+         x += (ay - by) * (az + bz);
+         y += (az - bz) * (ax + bx);
+         z += (ax - bx) * (ay + by);
+      }
+      out[0] = x;
+      out[1] = y;
+      out[2] = z;
+   }
+   
+   /**
+       Returns the remaining surfaces as a new mesh, with the points numbered in
+       the order the surfaces first use them.
+   */
+   private Mesh toMesh() {
+      int[] newIndex = new int[pointX.length];
+      Arrays.fill(newIndex, -1);
+      double[] x = new double[pointX.length];
+      double[] y = new double[pointX.length];
+      double[] z = new double[pointX.length];
+      int numbPoints = 0;
+      int[] offsets = new int[numbSurfaces + 1];
+      int numbIndices = 0;
+      for (int i = 0; i < surfaces.length; i++) {
+         if (!removedSurfaces[i]) {
+            numbIndices += surfaces[i].length;
+         }
+      }
+      int[] indices = new int[numbIndices];
+      int[] surfaceColors = new int[numbSurfaces];
+      
+      int surfaceIndex = 0;
+      int position = 0;
+      for (int i = 0; i < surfaces.length; i++) {
+         if (removedSurfaces[i]) {
+            continue;
+         }
+         for (int j = 0; j < surfaces[i].length; j++) {
+            int point = surfaces[i][j];
+            if (newIndex[point] < 0) {
+               newIndex[point] = numbPoints;
+               x[numbPoints] = pointX[point];
+               y[numbPoints] = pointY[point];
+               z[numbPoints] = pointZ[point];
+               numbPoints++;
+            }
+            indices[position] = newIndex[point];
+            position++;
+         }
+         surfaceColors[surfaceIndex] = colors[i];
+         surfaceIndex++;
+         offsets[surfaceIndex] = position;
+      }
+      return new Mesh(x, y, z, numbPoints, offsets, indices, surfaceColors, numbSurfaces);
+   }
+   
+   /**
+       A queued edge collapse, ordered by its error. The versions of the points
+       tell whether they have changed since it was queued.
+   */
+   private static class Collapse implements Comparable<Collapse>
+   {
+      private double cost;
+      private int from, to;
+      private int fromVersion, toVersion;
+      private double x, y, z;
+      
+      public int compareTo(Collapse other) {
+         return Double.compare(cost, other.cost);
+      }
+   }
+}
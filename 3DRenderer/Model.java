@@ -1,35 +1,100 @@
 import java.io.File;
 import java.io.IOException;
-import java.util.Scanner;
 import java.awt.Graphics;
 import java.awt.Color;
 
 public class Model
 {
    private Camera cam;
-   private Vector[] points;
-   private Vector[] transformedPoints;
-   private int numbPoints;
+   //the points and surfaces are kept in a mesh that can be shared with other
+   //models. Only the transformed points and the surfaces, which hold the
+   //lighting and depth of this copy, belong to the model.
+   private Mesh mesh;
+   private boolean sharedMesh;
+   //vertex coordinates are stored as parallel primitive arrays (structure of arrays)
+   //so the transform pass can run without allocating per vertex. They're
+   //allocated the first time the model is transformed.
+   private double[] transformedX, transformedY, transformedZ;
+   private double[] worldX, worldY, worldZ;
    private Surface[] surfaces;
    private int numbSurfaces;
+   //coarser versions of the mesh drawn when the model is small on the screen,
+   //starting with the mesh itself, and the surfaces of each level, which are
+   //made the first time the level is drawn
+   private Mesh[] levels;
+   private Surface[][] levelSurfaces;
+   private int level;
+   private double pixelsPerSurface;
+   private boolean lightingCorrected;
+   //the mesh and surfaces drawn this frame, which are the model's own unless a
+   //coarser level of detail was picked
+   private Mesh drawMesh;
+   private Surface[] drawSurfaces;
+   private int numbDrawSurfaces;
    private Vector position;
    private double scalar;
    private Vector[] axes;
    private RotationType[] rotationStack;
-   private Vector[] worldPoints;
+   private WorkerPool workerPool;
+   //matrices of the current frame, set by updateTransform. The normal matrix
+   //holds the cofactors of the model matrix, which turn normals into world
+   //coordinates whatever the lengths of the axes. Both 3x3 matrices are also
+   //kept as arrays by row for lighting the surfaces.
+   private Matrix4x4 modelMatrix;
+   private Matrix4x4 modelView;
+   private Matrix4x4 modelViewProjection;
+   private double[] worldMatrix;
+   private double[] normalMatrix;
+   //surfaces facing the camera this frame, and the points they use, which are
+   //the points with the current stamp
+   private boolean[] facingCamera;
+   private int[] pointStamps;
+   private int stamp;
+   //how much each point is lit for smooth shading, and the frame it was lit in
+   private float[] pointLight;
+   private int[] lightStamps;
+   private int lightFrame;
+   //what the points were last transformed with: the model matrix and position,
+   //the camera and its version, the mesh and whether only the stamped points
+   //were transformed. The points are only transformed again when one of them
+   //changed, or the mesh or surfaces were changed since.
+   private double[] transformedState;
+   private Camera transformedCamera;
+   private int transformedCameraVersion;
+   private Mesh transformedMesh;
+   private boolean transformedStampedOnly;
+   private boolean transformValid;
+   //the world points only depend on the model matrix, so they're kept while
+   //just the position or the camera moves. A point's world coordinates are up
+   //to date when its entry in worldVersions is worldVersion.
+   private double[] worldState;
+   private Mesh worldMesh;
+   private int worldVersion;
+   private int[] worldVersions;
+   //planes of the camera view in model coordinates, 4 values per plane
+   private double[] viewPlanes;
+   //the scene holding the model, its index there, and the frame of the scene
+   //the rotations on the stack were added in
+   Scene scene;
+   int sceneIndex;
+   private int rotationFrame;
    
    public Model() {
-      this(null);
+      this((Camera)null);
    }
    
    public Model(Camera camIn) {
       cam = camIn;
-      points = new Vector[50];
-      transformedPoints = new Vector[50];
-      worldPoints = new Vector[50];
-      numbPoints = 0;
+      mesh = new Mesh();
+      sharedMesh = false;
+      allocateBuffers(0);
       surfaces = new Surface[5];
       numbSurfaces = 0;
+      levels = null;
+      level = 0;
+      pixelsPerSurface = 25;
+      lightingCorrected = true;
+      useLevel(0);
       position = new Vector();
       scalar = 1;
       axes = new Vector[3];
@@ -37,80 +102,94 @@ public class Model
       axes[1] = new Vector(0, 1, 0);
       axes[2] = new Vector(0, 0, 1);
       rotationStack = new RotationType[0];
+      workerPool = WorkerPool.getShared();
+      viewPlanes = new double[20];
+      facingCamera = new boolean[5];
+      stamp = 0;
+      transformedState = new double[12];
+      transformValid = false;
+      worldState = new double[9];
+      worldVersion = 0;
+      scene = null;
+      sceneIndex = -1;
+      rotationFrame = 0;
    }
    
+   /**
+       Creates a model drawing the given mesh, which may be shared with other models.
+   */
+   public Model(Mesh meshIn) {
+      this((Camera)null);
+      setMesh(meshIn);
+   }
+   
+   /**
+       Loads the points, surfaces and colors of the model from a text .dat file,
+       or from a binary file if the name ends with MeshFile.EXTENSION. Files are
+       loaded through the MeshCache, so models reading the same file share one mesh.
+   */
    public void readFile(String fileName) {
-      points = new Vector[50];
-      numbPoints = 0;
-      surfaces = new Surface[5];
-      numbSurfaces = 0;
       try {
-         Scanner fileScanner = new Scanner(new File(fileName));
-         String line = fileScanner.nextLine();
-         Scanner lineScanner = new Scanner(line);
-         
-         //reads in points from the given file
-         while (!line.equals("")) {
-            lineScanner.useDelimiter(", ");
-            double x = Double.parseDouble(lineScanner.next());
-            double y = Double.parseDouble(lineScanner.next());
-            double z = Double.parseDouble(lineScanner.next());
-            
-            Vector newPoint = new Vector(x, y, z);
-            addPoint(newPoint);
-            
-            line = fileScanner.nextLine();
-            lineScanner = new Scanner(line);
-         }
-         
-         line = fileScanner.nextLine();
-         lineScanner = new Scanner(line);
-         
-         //reads in surface values
-         while (!line.equals("")) {
-            lineScanner.useDelimiter(", ");
-            
-            Surface newSurface = new Surface();
-            addSurface(newSurface);
-            
-            while (lineScanner.hasNext()) {
-               int index = Integer.parseInt(lineScanner.next());
-               newSurface.add(transformedPoints[index], 
-                             worldPoints[index]);
-            }
-            
-            line = fileScanner.nextLine();
-            lineScanner = new Scanner(line);
-         }
-         
-         //reads in color values.
-         for (int i = 0; i < numbSurfaces; i++) {
-            line = fileScanner.nextLine();
-            
-            if (line.trim().equals("")) {
-               break;
-            }
-            
-            lineScanner = new Scanner(line);
-            lineScanner.useDelimiter(", ");
-            
-            int red = Integer.parseInt(lineScanner.next());
-            int green = Integer.parseInt(lineScanner.next());
-            int blue = Integer.parseInt(lineScanner.next());
-            surfaces[i].setFillColor(new Color(red, green, blue));
-         }
-         
-         fileScanner.close();
+         setMesh(MeshCache.get(fileName));
       }
       catch (IOException e) {
-         System.out.println("Invalid File");
+         System.out.println("Invalid File: " + e.getMessage());
+         setMesh(new Mesh());
+      }
+   }
+   
+   /**
+       Replaces the points and surfaces of the model with the given mesh, which
+       may be shared with other models. The mesh itself is never modified,
+       adding points to the model gives it its own copy first.
+   */
+   public void setMesh(Mesh meshIn) {
+      mesh = meshIn;
+      sharedMesh = true;
+      moved();
+      
+      surfaces = new Surface[Math.max(5, mesh.getNumbSurfaces())];
+      numbSurfaces = 0;
+      for (int i = 0; i < mesh.getNumbSurfaces(); i++) {
+         addSurface(new Surface(this, mesh, i));
       }
-      catch (NumberFormatException e) {
-         System.out.println(e);
+      levels = null;
+   }
+   
+   /**
+       Switches drawing coarser versions of the mesh when the model is small on
+       the screen. The levels are made from the mesh by MeshSimplifier the first
+       time they're used, and are shared by the models drawing the same mesh.
+       Adding points or surfaces to the model switches it off again.
+   */
+   public void useLevelsOfDetail(boolean state) {
+      if (state && (mesh.getNumbSurfaces() > 0)) {
+         levels = mesh.getLevelsOfDetail();
+         levelSurfaces = new Surface[levels.length][];
       }
-      catch (IllegalArgumentException e) {
-         System.out.println(e);
+      else {
+         levels = null;
       }
+      level = 0;
+   }
+   
+   /**
+       Sets how many pixels of the screen each surface should cover when picking
+       the level of detail. Smaller values keep more detail.
+   */
+   public void setPixelsPerSurface(double pixels) {
+      pixelsPerSurface = pixels;
+   }
+   
+   /**
+       Returns the level of detail drawn in the last frame, 0 being the full mesh.
+   */
+   public int getLevelOfDetail() {
+      return level;
+   }
+   
+   public Mesh getMesh() {
+      return mesh;
    }
    
    public void addXRotation(double angleIn) {
@@ -126,12 +205,26 @@ public class Model
    }
    
    public void isLightingCorrected(boolean value) {
+      lightingCorrected = value;
       for (int i = 0; i < numbSurfaces; i++) {
          surfaces[i].setLightingCorrected(value);
       }
+      if (levels != null) {
+         for (int i = 1; i < levels.length; i++) {
+            for (int j = 0; (levelSurfaces[i] != null) && (j < levelSurfaces[i].length); j++) {
+               levelSurfaces[i][j].setLightingCorrected(value);
+            }
+         }
+      }
    }
    
    private void addRotation(RotationType rot) {
+      //models of a scene that weren't in view last frame didn't use up their
+      //rotations, which only last for the frame they were added in
+      if ((scene != null) && (rotationFrame != scene.getFrame())) {
+         rotationStack = new RotationType[0];
+         rotationFrame = scene.getFrame();
+      }
       RotationType[] temp = rotationStack;
       rotationStack = new RotationType[temp.length + 1];
       for (int i = 0; i < temp.length; i++) {
@@ -143,13 +236,19 @@ public class Model
    public boolean scale(double scalarIn) {
       if (Math.abs(scalarIn) > 0) {
          scalar = Math.abs(scalarIn);
+         moved();
          return true;
       }
       return false;
    }
    
+   /**
+       Sets the position of the model. The vector is kept, so it shouldn't be
+       changed afterwards without setting it again.
+   */
    public void setPosition(Vector positionIn) {
       position = positionIn;
+      moved();
    }
    
    public boolean setCoordinateSystem(Vector xAxis, Vector yAxis, Vector zAxis) {
@@ -158,6 +257,7 @@ public class Model
             axes[0].setFromVector(xAxis);
             axes[1].setFromVector(yAxis);
             axes[2].setFromVector(zAxis);
+            moved();
             return true;
          }
       }
@@ -168,56 +268,305 @@ public class Model
       return position;
    }
    
+   /**
+       Returns the radius of a sphere around the position of the model that
+       contains the model in any rotation.
+   */
+   public double getBoundingRadius() {
+      if (mesh.getNumbPoints() == 0) {
+         return 0;
+      }
+      //the axes are perpendicular, so the longest one is the most the coordinate
+      //system can stretch a point
+      double axisLength = Math.max(axes[0].magnitude(), Math.max(axes[1].magnitude(), axes[2].magnitude()));
+      double reach = mesh.getBoundingCenter().magnitude() + mesh.getBoundingRadius();
+      return reach * scalar * axisLength;
+   }
+   
+   private void moved() {
+      if (scene != null) {
+         scene.modelMoved(this);
+      }
+   }
+   
    public void addPoint(Vector pointIn) {
-      if (numbPoints == points.length) {
-         Vector[] temp = points;
-         Vector[] tempTransformed = transformedPoints;
-         points = new Vector[numbPoints + 50];
-         transformedPoints = new Vector[numbPoints + 50];
-         worldPoints = new Vector[numbPoints + 50];
-         for (int i = 0; i < numbPoints; i++) {
-            points[i] = temp[i];
-            transformedPoints[i] = new Vector();
-            worldPoints[i] = new Vector();
-         }
+      addPoint(pointIn.getXD(), pointIn.getYD(), pointIn.getZD());
+   }
+   
+   public void addPoint(double x, double y, double z) {
+      if (sharedMesh) {
+         mesh = mesh.copy();
+         sharedMesh = false;
       }
-      points[numbPoints] = pointIn;
-      transformedPoints[numbPoints] = new Vector();
-      worldPoints[numbPoints] = new Vector();
-      numbPoints++;
-      
+      mesh.addPoint(x, y, z);
+      levels = null;
+      transformValid = false;
+      //a new point can reach past the bounds the scene holds for the model
+      moved();
+   }
+   
+   private void allocateBuffers(int capacity) {
+      pointStamps = new int[capacity];
+      pointLight = new float[capacity];
+      lightStamps = new int[capacity];
+      transformedX = new double[capacity];
+      transformedY = new double[capacity];
+      transformedZ = new double[capacity];
+      worldX = new double[capacity];
+      worldY = new double[capacity];
+      worldZ = new double[capacity];
+      worldVersions = new int[capacity];
+      worldMesh = null;
+      transformValid = false;
+   }
+   
+   /**
+       Makes sure the transformed point arrays can hold every point of the mesh.
+   */
+   private void ensureBuffers() {
+      int count = mesh.getNumbPoints();
+      if (transformedX.length < count) {
+         allocateBuffers(Math.max(count, transformedX.length * 2));
+      }
+   }
+   
+   public Surface getSurface(int index) {
+      return surfaces[index];
+   }
+   
+   public int getNumbSurfaces() {
+      return numbSurfaces;
+   }
+   
+   public int getNumbPoints() {
+      return mesh.getNumbPoints();
+   }
+   
+   /**
+       Returns a copy of the given point in model coordinates. Compatibility
+       accessor for code that still works with Vector objects.
+   */
+   public Vector getPoint(int index) {
+      return mesh.getPoint(index);
+   }
+   
+   /**
+       Returns a copy of the given point in screen coordinates as of the last
+       call to performTransformations.
+   */
+   public Vector getTransformedPoint(int index) {
+      ensureBuffers();
+      return new Vector(transformedX[index], transformedY[index], transformedZ[index]);
+   }
+   
+   /**
+       Returns a copy of the given point in world coordinates as of the last
+       call to performTransformations.
+   */
+   public Vector getWorldPoint(int index) {
+      ensureBuffers();
+      return new Vector(worldX[index], worldY[index], worldZ[index]);
+   }
+   
+   //direct access to the coordinate arrays for the surfaces of this model.
+   //the arrays are replaced when the model grows, so they should not be cached.
+   double[] getTransformedX() {
+      return transformedX;
+   }
+   
+   double[] getTransformedY() {
+      return transformedY;
+   }
+   
+   double[] getTransformedZ() {
+      return transformedZ;
+   }
+   
+   double[] getWorldX() {
+      return worldX;
+   }
+   
+   double[] getWorldY() {
+      return worldY;
+   }
+   
+   double[] getWorldZ() {
+      return worldZ;
    }
    
    public void addSurface(Surface surfaceIn) {
       if (numbSurfaces == surfaces.length){
          Surface[] temp = surfaces;
-         surfaces = new Surface[numbSurfaces + 5];
+         surfaces = new Surface[Math.max(5, numbSurfaces * 2)];
          for (int i = 0; i < numbSurfaces; i++) {
             surfaces[i] = temp[i];
          }
       }
+      if (numbSurfaces >= facingCamera.length) {
+         facingCamera = new boolean[surfaces.length];
+      }
       surfaces[numbSurfaces] = surfaceIn;
       numbSurfaces++;
+      levels = null;
+      transformValid = false;
    }
    
-   public void setDrawStack() {
-      performTransformations();
-      for (int i = 0; i < numbSurfaces; i++) {
-         surfaces[i].addToDrawStack();
+   /**
+       Makes the next frame transform the points again, after a surface of the
+       model was changed.
+   */
+   void surfaceChanged() {
+      transformValid = false;
+   }
+   
+   /**
+       Transforms the model with the camera of the context and adds its visible
+       surfaces to the draw stack of the context. Models whose bounding volume is
+       outside of the view of the camera are skipped without transforming their points.
+       Unless drawing wire frames, surfaces facing away from the camera are skipped
+       too, and only the points of the remaining surfaces are transformed.
+   */
+   public void setDrawStack(RenderContext context) {
+      Camera cam = context.getCamera();
+      FrameProfiler profiler = context.getProfiler();
+      long time = profiler.start();
+      updateTransform(cam);
+      selectLevel(cam);
+      time = profiler.lap(FrameProfiler.TRANSFORM, time);
+      if (!isInView(cam)) {
+         profiler.lap(FrameProfiler.VISIBILITY, time);
+         return;
+      }
+      profiler.addModel(numbDrawSurfaces, drawMesh.getNumbPoints());
+      DepthSorter drawStack = context.getDrawStack();
+      int first = drawStack.size();
+      if (context.isWireframe()) {
+         if (!isTransformCurrent(cam, false)) {
+            transformPoints(cam, false);
+         }
+         time = profiler.lap(FrameProfiler.TRANSFORM, time);
+         for (int i = 0; i < numbDrawSurfaces; i++) {
+            drawSurfaces[i].addIfVisible(context);
+         }
+      }
+      else {
+         //the surfaces facing the camera only change with the model and camera, so
+         //when neither changed the facing surfaces and points are kept as well
+         if (!isTransformCurrent(cam, true)) {
+            time = profiler.lap(FrameProfiler.TRANSFORM, time);
+            findFacingSurfaces(cam);
+            time = profiler.lap(FrameProfiler.VISIBILITY, time);
+            transformPoints(cam, true);
+            time = profiler.lap(FrameProfiler.TRANSFORM, time);
+         }
+         for (int i = 0; i < numbDrawSurfaces; i++) {
+            if (facingCamera[i]) {
+               drawSurfaces[i].addIfVisible(context);
+            }
+         }
       }
+      time = profiler.lap(FrameProfiler.VISIBILITY, time);
+      
+      //the surfaces of this model are the ones added to the stack since first
+      Surface[] added = drawStack.getSurfaces();
+      for (int i = first; i < drawStack.size(); i++) {
+         added[i].shade(context);
+      }
+      profiler.lap(FrameProfiler.LIGHTING, time);
    }
    
    public void setCamera(Camera camIn) {
       cam = camIn;
    }
    
+   /**
+       Sets the pool used to transform the points of this model. Models use the
+       shared pool unless given their own.
+   */
+   public void setWorkerPool(WorkerPool poolIn) {
+      workerPool = poolIn;
+   }
+   
    public void performTransformations() {
-      Matrix3x3 transformToScreen = new Matrix3x3(cam.getRight(), cam.getDown(), cam.getNormal());
-      
-      transformToScreen = transformToScreen.getTranspose().invert();
-      
+      performTransformations(cam);
+   }
+   
+   public void performTransformations(Camera cam) {
+      updateTransform(cam);
+      useLevel(0);
+      if (!isTransformCurrent(cam, false)) {
+         transformPoints(cam, false);
+      }
+   }
+   
+   /**
+       Picks the coarsest level of detail that still has a surface for about every
+       pixelsPerSurface pixels the model covers on the screen. The size on the
+       screen is found from the bounding radius and the depth of the position of
+       the model, using the matrices of the current frame.
+   */
+   private void selectLevel(Camera cam) {
+      level = 0;
+      if (levels != null) {
+         double radius = getBoundingRadius();
+         double depth = cam.getPerspectivePoint() + modelView.getElement(2, 3);
+         //a camera inside the bounding sphere always gets the full mesh
+         if (depth > radius) {
+            double screenRadius = (radius * cam.getPerspectivePoint()) / depth;
+            double surfacesWanted = (Math.PI * screenRadius * screenRadius) / pixelsPerSurface;
+            while ((level + 1 < levels.length) && (levels[level + 1].getNumbSurfaces() >= surfacesWanted)) {
+               level++;
+            }
+         }
+      }
+      useLevel(level);
+   }
+   
+   /**
+       Makes the given level of detail the one drawn this frame.
+   */
+   private void useLevel(int levelIn) {
+      if (levelIn == 0) {
+         drawMesh = mesh;
+         drawSurfaces = surfaces;
+         numbDrawSurfaces = numbSurfaces;
+         return;
+      }
+      if (levelSurfaces[levelIn] == null) {
+         Mesh levelMesh = levels[levelIn];
+         Surface[] created = new Surface[levelMesh.getNumbSurfaces()];
+         for (int i = 0; i < created.length; i++) {
+            created[i] = new Surface(this, levelMesh, i);
+            created[i].setLightingCorrected(lightingCorrected);
+         }
+         levelSurfaces[levelIn] = created;
+      }
+      drawMesh = levels[levelIn];
+      drawSurfaces = levelSurfaces[levelIn];
+      numbDrawSurfaces = drawSurfaces.length;
+   }
+   
+   /**
+       Returns the mesh drawn this frame, which is a coarser one than the mesh of
+       the model when a level of detail was picked.
+   */
+   Mesh getDrawMesh() {
+      return drawMesh;
+   }
+   
+   /**
+       Composes the matrices of the current frame from the rotations added since
+       the last frame, the coordinate system, scale and position of the model and
+       the camera. This is done once per frame whether or not the model is visible,
+       so the rotations don't carry over to the next frame.
+   */
+   private void updateTransform(Camera cam) {
       Matrix3x3 rotate = Matrix3x3.identityMatrix();
+      lightFrame++;
       
+      if ((scene != null) && (rotationFrame != scene.getFrame())) {
+         rotationStack = new RotationType[0];
+      }
       for (int i = 0; i < rotationStack.length; i++) {
          rotate = rotate.multiply(rotationStack[i].getRotation());
       }
@@ -225,52 +574,283 @@ public class Model
       
       Matrix3x3 systemTransform = (new Matrix3x3(axes[0], axes[1], axes[2])).getTranspose();
       
+      //the whole chain from model coordinates to the screen is composed once per
+      //frame, so each point only needs one matrix multiply and a divide. The world
+      //points used for lighting don't include the position of the model.
+      Matrix3x3 model = systemTransform.multiply(rotate).scale(scalar);
+      modelMatrix = new Matrix4x4(model);
+      modelView = cam.getViewMatrix().multiply(Matrix4x4.translate(position)).multiply(modelMatrix);
+      modelViewProjection = cam.getProjectionMatrix().multiply(modelView);
+      Matrix3x3 normals = model.invert().getTranspose().scale(model.getDeterminate());
+      if (worldMatrix == null) {
+         worldMatrix = new double[9];
+         normalMatrix = new double[9];
+      }
+      for (int row = 0; row < 3; row++) {
+         for (int column = 0; column < 3; column++) {
+            worldMatrix[row * 3 + column] = model.getElement(row, column);
+            normalMatrix[row * 3 + column] = normals.getElement(row, column);
+         }
+      }
+   }
+   
+   /**
+       Works out how much the given points are lit by the lights of the context,
+       from the normals of the points in the mesh, for smooth shading. Each point
+       is only lit once per frame however many surfaces use it, so the surfaces of
+       a model should be lit after its points are transformed.
+       @param indices int[] indices of the points
+       @param start int position of the first index
+       @param count int number of indices
+   */
+   void lightPoints(RenderContext context, int[] indices, int start, int count) {
+      Lighting lighting = context.getLighting();
+      double[] normalX = drawMesh.getVertexNormalX();
+      double[] normalY = drawMesh.getVertexNormalY();
+      double[] normalZ = drawMesh.getVertexNormalZ();
+      double[] n = normalMatrix;
+      double positionX = position.getXD();
+      double positionY = position.getYD();
+      double positionZ = position.getZD();
+      for (int i = start; i < start + count; i++) {
+         int index = indices[i];
+         if (lightStamps[index] == lightFrame) {
+            continue;
+         }
+         lightStamps[index] = lightFrame;
+         
+         double x = normalX[index];
+         double y = normalY[index];
+         double z = normalZ[index];
+         double worldNormalX = n[0] * x + n[1] * y + n[2] * z;
+         double worldNormalY = n[3] * x + n[4] * y + n[5] * z;
+         double worldNormalZ = n[6] * x + n[7] * y + n[8] * z;
+         double length = Math.sqrt((worldNormalX * worldNormalX) + (worldNormalY * worldNormalY)
+                                   + (worldNormalZ * worldNormalZ));
+         if (length > 0) {
+            worldNormalX /= length;
+            worldNormalY /= length;
+            worldNormalZ /= length;
+         }
+         pointLight[index] = (float)lighting.intensity(worldX[index] + positionX, worldY[index] + positionY,
+                                                       worldZ[index] + positionZ,
+                                                       worldNormalX, worldNormalY, worldNormalZ);
+      }
+   }
+   
+   /**
+       Returns how much each point was lit by lightPoints, from 0 to 1.
+   */
+   float[] getPointLight() {
+      return pointLight;
+   }
+   
+   /**
+       Returns the model matrix of the last transform as 9 values by row. It
+       doesn't include the position of the model.
+   */
+   double[] getWorldMatrix() {
+      return worldMatrix;
+   }
+   
+   /**
+       Returns the matrix turning normals into world coordinates as of the last
+       transform, as 9 values by row. The normals it gives aren't of length 1.
+   */
+   double[] getNormalMatrix() {
+      return normalMatrix;
+   }
+   
+   /**
+       Finds the surfaces facing the camera and stamps the points they use. The
+       camera is the point the screen projection goes through, at the perspective
+       distance behind the screen, found in model coordinates by undoing the
+       model and view matrices.
+   */
+   private void findFacingSurfaces(Camera cam) {
+      double[][] m = new double[3][3];
+      for (int row = 0; row < 3; row++) {
+         for (int column = 0; column < 3; column++) {
+            m[row][column] = modelView.getElement(row, column);
+         }
+      }
+      Vector eye = (new Matrix3x3(m)).invert().multiply(
+                   new Vector(-modelView.getElement(0, 3), -modelView.getElement(1, 3),
+                              -cam.getPerspectivePoint() - modelView.getElement(2, 3)));
+      double eyeX = eye.getXD();
+      double eyeY = eye.getYD();
+      double eyeZ = eye.getZD();
       
-      Thread[] threads = new Thread[1];
-      
-      //long time = System.nanoTime();
-      
-      for (int i = 0; i < threads.length; i++) {
-         threads[i] = new Thread(new PointTransform(i, threads.length, rotate, systemTransform, transformToScreen));
-         threads[i].start();
+      ensureBuffers();
+      stamp++;
+      if (facingCamera.length < numbDrawSurfaces) {
+         facingCamera = new boolean[numbDrawSurfaces];
+      }
+      for (int i = 0; i < numbDrawSurfaces; i++) {
+         facingCamera[i] = drawSurfaces[i].facesPoint(eyeX, eyeY, eyeZ);
+         if (facingCamera[i]) {
+            drawSurfaces[i].markPoints(pointStamps, stamp);
+         }
       }
+   }
+   
+   /**
+       Returns whether the bounding volume of the mesh is at least partly inside
+       the view of the camera, using the matrices of the current frame.
+   */
+   private boolean isInView(Camera cam) {
+      //a point is drawn when its screen x is between 0 and the width, its screen
+      //y is between 0 and the height, and it's in front of the camera. Screen x
+      //is row 0 of the matrix divided by row 3, so with row 3 positive in front of
+      //the camera each bound is a plane in model coordinates.
+      double width = cam.getWidth();
+      double height = cam.getHeight();
+      for (int column = 0; column < 4; column++) {
+         double screenX = modelViewProjection.getElement(0, column);
+         double screenY = modelViewProjection.getElement(1, column);
+         double depth = modelViewProjection.getElement(2, column);
+         double w = modelViewProjection.getElement(3, column);
+         viewPlanes[column] = screenX;
+         viewPlanes[4 + column] = (width * w) - screenX;
+         viewPlanes[8 + column] = screenY;
+         viewPlanes[12 + column] = (height * w) - screenY;
+         viewPlanes[16 + column] = depth;
+      }
+      //points are drawn down to a depth of -1 since the depth is truncated
+      viewPlanes[19] += 1;
       
-      try {
-         for (Thread thread : threads) {
-            thread.join();
+      return drawMesh.intersects(viewPlanes, 5);
+   }
+   
+   /**
+       Returns whether the points transformed last time are still right for the
+       current frame, which is when the model matrix, the position, the camera and
+       the level of detail are all the same as then and the same points are wanted.
+       @param stampedOnly boolean whether only the points of the surfaces facing
+                          the camera are wanted
+   */
+   private boolean isTransformCurrent(Camera cam, boolean stampedOnly) {
+      if (!transformValid || (cam != transformedCamera) || (cam.getVersion() != transformedCameraVersion)
+          || (drawMesh != transformedMesh) || (stampedOnly != transformedStampedOnly)) {
+         return false;
+      }
+      for (int i = 0; i < 9; i++) {
+         if (worldMatrix[i] != transformedState[i]) {
+            return false;
          }
-      } 
-      catch (InterruptedException e) {
-         System.out.println("Interrupted");
       }
+      return (position.getXD() == transformedState[9]) && (position.getYD() == transformedState[10])
+             && (position.getZD() == transformedState[11]);
+   }
+   
+   /**
+       Transforms the points of the mesh with the matrices of the current frame.
+       The world coordinates of a point are only worked out again when the model
+       matrix changed since they last were, so moving the camera or the position
+       only redoes the projection.
+       @param stampedOnly boolean whether to only transform the points stamped by
+                          findFacingSurfaces
+   */
+   private void transformPoints(Camera cam, boolean stampedOnly) {
+      ensureBuffers();
+      boolean worldCurrent = (drawMesh == worldMesh);
+      for (int i = 0; (i < 9) && worldCurrent; i++) {
+         worldCurrent = (worldMatrix[i] == worldState[i]);
+      }
+      if (!worldCurrent) {
+         worldVersion++;
+         worldMesh = drawMesh;
+         System.arraycopy(worldMatrix, 0, worldState, 0, 9);
+      }
+      
+      workerPool.run(drawMesh.getNumbPoints(), new PointTransform(modelMatrix, modelViewProjection,
+                                                              stampedOnly ? pointStamps : null, stamp,
+                                                              worldVersion));
       
-      //System.out.println((System.nanoTime() - time));
+      System.arraycopy(worldMatrix, 0, transformedState, 0, 9);
+      transformedState[9] = position.getXD();
+      transformedState[10] = position.getYD();
+      transformedState[11] = position.getZD();
+      transformedCamera = cam;
+      transformedCameraVersion = cam.getVersion();
+      transformedMesh = drawMesh;
+      transformedStampedOnly = stampedOnly;
+      transformValid = true;
    }
    
-   private class PointTransform implements Runnable
+   private class PointTransform implements WorkerPool.RangeTask
    {
-      //Vector currentPoint;
-      private int initialIndex;
-      private int indexIncrement;
-      private Matrix3x3 rotate;
-      private Matrix3x3 systemTransform;
-      private Matrix3x3 transformToScreen;
+      private Matrix4x4 modelMatrix;
+      private Matrix4x4 modelViewProjection;
+      private double[] pointX, pointY, pointZ;
+      private int[] stamps;
+      private int stamp;
+      private int version;
       
-      public PointTransform(int initial, int increment, Matrix3x3 rotateIn, Matrix3x3 systemTransformIn, Matrix3x3 transformToScreenIn) {
-         initialIndex = initial;
-         indexIncrement = increment;
-         rotate = rotateIn;
-         systemTransform = systemTransformIn;
-         transformToScreen = transformToScreenIn;
+      public PointTransform(Matrix4x4 modelMatrixIn, Matrix4x4 modelViewProjectionIn, int[] stampsIn, int stampIn,
+                            int versionIn) {
+         modelMatrix = modelMatrixIn;
+         modelViewProjection = modelViewProjectionIn;
+         stamps = stampsIn;
+         stamp = stampIn;
+         version = versionIn;
+         pointX = drawMesh.getPointX();
+         pointY = drawMesh.getPointY();
+         pointZ = drawMesh.getPointZ();
       }
       
-      public void run() {
-         for (int i = initialIndex; i < numbPoints; i += indexIncrement) {
-            transformedPoints[i].setFromVector(rotate.multiply(points[i].scale(scalar)));
-            transformedPoints[i].setFromVector(systemTransform.multiply(transformedPoints[i]));
-            worldPoints[i].setFromVector(transformedPoints[i]);
-            transformedPoints[i].setFromVector(transformedPoints[i].add(position).subtract(cam.getLocation()));
-            transformedPoints[i].setFromVector(cam.originOffset(cam.traceToCamera(transformToScreen.multiply(transformedPoints[i]))));
+      /**
+          Transforms a contiguous range of points directly into the coordinate arrays.
+          All matrix elements are copied into locals up front so nothing is allocated
+          per point.
+      */
+      public void run(int start, int end) {
+         double m00 = modelMatrix.getElement(0, 0);
+         double m01 = modelMatrix.getElement(0, 1);
+         double m02 = modelMatrix.getElement(0, 2);
+         double m10 = modelMatrix.getElement(1, 0);
+         double m11 = modelMatrix.getElement(1, 1);
+         double m12 = modelMatrix.getElement(1, 2);
+         double m20 = modelMatrix.getElement(2, 0);
+         double m21 = modelMatrix.getElement(2, 1);
+         double m22 = modelMatrix.getElement(2, 2);
+         
+         double p00 = modelViewProjection.getElement(0, 0);
+         double p01 = modelViewProjection.getElement(0, 1);
+         double p02 = modelViewProjection.getElement(0, 2);
+         double p03 = modelViewProjection.getElement(0, 3);
+         double p10 = modelViewProjection.getElement(1, 0);
+         double p11 = modelViewProjection.getElement(1, 1);
+         double p12 = modelViewProjection.getElement(1, 2);
+         double p13 = modelViewProjection.getElement(1, 3);
+         double p20 = modelViewProjection.getElement(2, 0);
+         double p21 = modelViewProjection.getElement(2, 1);
+         double p22 = modelViewProjection.getElement(2, 2);
+         double p23 = modelViewProjection.getElement(2, 3);
+         double p30 = modelViewProjection.getElement(3, 0);
+         double p31 = modelViewProjection.getElement(3, 1);
+         double p32 = modelViewProjection.getElement(3, 2);
+         double p33 = modelViewProjection.getElement(3, 3);
+         
+         for (int i = start; i < end; i++) {
+            if ((stamps != null) && (stamps[i] != stamp)) {
+               continue;
+            }
+            double x = pointX[i];
+            double y = pointY[i];
+            double z = pointZ[i];
+            
+            if (worldVersions[i] != version) {
+               worldX[i] = m00 * x + m01 * y + m02 * z;
+               worldY[i] = m10 * x + m11 * y + m12 * z;
+               worldZ[i] = m20 * x + m21 * y + m22 * z;
+               worldVersions[i] = version;
+            }
+            
+            double w = 1 / (p30 * x + p31 * y + p32 * z + p33);
+            transformedX[i] = (p00 * x + p01 * y + p02 * z + p03) * w;
+            transformedY[i] = (p10 * x + p11 * y + p12 * z + p13) * w;
+            transformedZ[i] = p20 * x + p21 * y + p22 * z + p23;
          }
       }
    }
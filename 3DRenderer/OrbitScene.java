@@ -0,0 +1,138 @@
+import java.io.File;
+
+/**
+    This class is the demo scene of a rocket orbiting the earth on an inclined
+    orbit. It's shared by the window and the headless renderer, so both of
+    them load and move the same models.
+*/
+public class OrbitScene
+{
+   private Scene scene;
+   private Model satelite, earth;
+   private Vector position;
+   private Vector[] earthSystem;
+   private double count;
+   private boolean levelsOfDetail;
+   
+   public OrbitScene() {
+      scene = new Scene();
+      satelite = new Model();
+      earth = new Model();
+      position = new Vector(0, 400, 0);
+      count = 0;
+      levelsOfDetail = false;
+      
+      int inclination = 20;
+      
+      earthSystem = new Vector[3];
+      earthSystem[1] = new Vector(0, 1, 0);
+      earthSystem[2] = (new Vector(Math.sin(inclination * Matrix3x3.TORAD), 0, Math.cos(inclination * Matrix3x3.TORAD))).normalize();
+      earthSystem[0] = earthSystem[1].cross(earthSystem[2]);
+   }
+   
+   /**
+       Creates the camera the scene is viewed with, looking down at the earth
+       from above the orbit.
+   */
+   public static Camera createCamera(int width, int height) {
+      Camera cam = new Camera(width, height);
+      
+      //cam.setLocation(new Vector(0, 0, 1000));
+      //cam.setRight(new Vector(-1, 0, 0));
+      //cam.setDown(new Vector(0, 1, 0));
+      
+      cam.setLocation((new Vector(0, 500, 250)).scale(2));
+      cam.setRight((new Vector(-1, 0, 0)));
+      cam.setDown(cam.getLocation().normalize().scale(-1).cross(cam.getRight()));
+      
+      cam.setPerspectivePoint(1000);
+      
+      return cam;
+   }
+   
+   /**
+       Adds the light sources of the scene to the context.
+   */
+   public static void addLights(RenderContext context) {
+      context.addLightSource(new Vector(1000, 500, 0));
+   }
+   
+   /**
+       Loads the models of the scene from the given directory.
+       @param cam Camera the models are drawn with
+       @param inputDirectory String directory containing the model files
+   */
+   public void load(Camera cam, String inputDirectory) {
+      satelite = new Model(cam);
+      satelite.setPosition(position);
+      satelite.readFile(new File(inputDirectory, "rocket5.dat").getPath());
+      satelite.scale(0.125);
+      earth = new Model(cam);
+      earth.readFile(new File(inputDirectory, "sphereGen2.dat").getPath());
+      //earth.setCoordinateSystem(new Vector(0, 1, 0), new Vector(0, 0, 1), new Vector(1, 0, 0));
+      
+      Vector xAxis = satelite.getPosition().normalize().scale(-1);
+      Vector yAxis = earthSystem[2];
+      
+      satelite.setCoordinateSystem(xAxis, yAxis, xAxis.cross(yAxis));
+      
+      earth.useLevelsOfDetail(levelsOfDetail);
+      satelite.useLevelsOfDetail(levelsOfDetail);
+      
+      scene = new Scene();
+      scene.add(earth);
+      scene.add(satelite);
+      //satelite.isLightingCorrected(false);
+      //Surface.setLightSource(satelite.getPosition());
+   }
+   
+   /**
+       Moves the scene to the current time and then advances the time by the
+       given amount.
+       @param timeStep double amount to advance the time by
+   */
+   public void step(double timeStep) {
+      satelite.addYRotation(count * 1.5);
+      satelite.addZRotation(count * 1);
+      earth.addZRotation(-0.25 * count);
+      
+      Matrix3x3 rotate = Matrix3x3.rotateZ(count * 1.5);
+      
+      Matrix3x3 transform = new Matrix3x3(earthSystem[0], earthSystem[1], earthSystem[2]);
+      transform = transform.getTranspose();
+      
+      satelite.setPosition(transform.multiply(rotate.multiply(position)));
+      //Surface.setLightSource(satelite.getPosition());
+      
+      count += timeStep;
+   }
+   
+   /**
+       Adds the visible surfaces of the scene to the draw stack of the context.
+   */
+   public void setDrawStack(RenderContext context) {
+      scene.setDrawStack(context);
+   }
+   
+   /**
+       Switch for drawing both models with fewer surfaces when they're small on
+       the screen. It's off unless switched on, and kept when the scene is loaded.
+   */
+   public void useLevelsOfDetail(boolean state) {
+      levelsOfDetail = state;
+      earth.useLevelsOfDetail(state);
+      satelite.useLevelsOfDetail(state);
+   }
+   
+   public void setCamera(Camera cam) {
+      satelite.setCamera(cam);
+      earth.setCamera(cam);
+   }
+   
+   /**
+       Returns the number of surfaces in the scene.
+   */
+   public int getNumbSurfaces() {
+      return satelite.getNumbSurfaces() + earth.getNumbSurfaces();
+   }
+}
@@ -4,6 +4,7 @@ import javax.swing.JTextField;
 import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.SwingUtilities;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
@@ -15,20 +16,27 @@ import java.awt.GridLayout;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Color;
+import java.io.IOException;
 import java.text.DecimalFormat;
 
 public class ProjectionWindow extends JFrame implements ActionListener, ItemListener, KeyListener
 {
    private JPanel primaryPanel, lowerPanel;
    private CanvasPanel canvas;
-  
+   
    private JLabel fpsCounter;
    private JCheckBox wireframeCheck;
-  
+   private JCheckBox smoothCheck;
+   private JCheckBox capCheck;
+   private JCheckBox statsCheck;
+   private JCheckBox detailCheck;
+   private JComboBox<String> renderModeBox;
+   
    private DecimalFormat format;
-  
+   
    private Camera cam;
-  
+   private RenderContext context;
+   
    public ProjectionWindow() {
       super("3D Projection");
       setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -40,22 +48,14 @@ public class ProjectionWindow extends JFrame implements ActionListener, ItemList
       lowerPanel.setPreferredSize(new Dimension(800, 30));
       canvas = new CanvasPanel(this);
       canvas.setPreferredSize(new Dimension(800, 500));
-      cam = new Camera(800, 500);
-    
-      //cam.setLocation(new Vector(0, 0, 1000));
-      //cam.setRight(new Vector(-1, 0, 0));
-      //cam.setDown(new Vector(0, 1, 0));
-    
-      cam.setLocation((new Vector(0, 500, 250)).scale(2));
-      cam.setRight((new Vector(-1, 0, 0)));
-      cam.setDown(cam.getLocation().normalize().scale(-1).cross(cam.getRight()));
-    
-      cam.setPerspectivePoint(1000);
-    
-      canvas.setCamera(cam);
-    
-      Surface.addLightSource(new Vector(1000, 500, 0));
-      Surface.setCamera(cam);
+      cam = OrbitScene.createCamera(800, 500);
+      
+      context = new RenderContext(cam);
+      OrbitScene.addLights(context);
+      //the orbiting scene changes little between frames
+      context.setSortWarmStart(true);
+      
+      canvas.setRenderContext(context);
       
       format = new DecimalFormat("##0");
       fpsCounter = new JLabel("FPS: 0");
@@ -65,36 +65,106 @@ public class ProjectionWindow extends JFrame implements ActionListener, ItemList
       wireframeCheck = new JCheckBox("Wireframe");
       wireframeCheck.setMnemonic(KeyEvent.VK_W);
       wireframeCheck.addItemListener(this);
-   
+      smoothCheck = new JCheckBox("Smooth");
+      smoothCheck.setMnemonic(KeyEvent.VK_S);
+      smoothCheck.addItemListener(this);
+      capCheck = new JCheckBox("Cap FPS");
+      capCheck.setMnemonic(KeyEvent.VK_C);
+      capCheck.addItemListener(this);
+      statsCheck = new JCheckBox("Stats");
+      statsCheck.setMnemonic(KeyEvent.VK_T);
+      statsCheck.addItemListener(this);
+      detailCheck = new JCheckBox("LOD");
+      detailCheck.setMnemonic(KeyEvent.VK_L);
+      detailCheck.addItemListener(this);
+      //whatever was timed is written out on exit too, P writes it at any time
+      context.getProfiler().exportOnShutdown("profile.csv");
+      context.getProfiler().exportOnShutdown("profile.json");
+      
+      //the order of the entries matches the render mode constants in RenderContext
+      renderModeBox = new JComboBox<String>(new String[] {"Java2D", "Z-Buffer", "Tiled"});
+      renderModeBox.setSelectedIndex(context.getRenderMode());
+      renderModeBox.setFocusable(false);
+      renderModeBox.addActionListener(this);
+      
       lowerPanel.add(fpsCounter);
       lowerPanel.add(wireframeCheck);
-   
+      lowerPanel.add(smoothCheck);
+      lowerPanel.add(capCheck);
+      lowerPanel.add(statsCheck);
+      lowerPanel.add(detailCheck);
+      lowerPanel.add(renderModeBox);
+      
       primaryPanel.add(canvas);
       primaryPanel.add(lowerPanel);
-   
+      
       getContentPane().add(primaryPanel);
       pack();
       this.requestFocusInWindow();
       setVisible(true);
       canvas.load();
    }
-  
+   
    public void actionPerformed(ActionEvent e) {
       if(e.getActionCommand().equals("fps timer")) {
          fpsCounter.setText("FPS: " + format.format(canvas.getFps()));
       }
+      else if (e.getSource() == renderModeBox) {
+         final int mode = renderModeBox.getSelectedIndex();
+         canvas.runOnRenderThread(
+            new Runnable() {
+               public void run() {
+                  context.setRenderMode(mode);
+               }
+            });
+      }
    }
-  
+   
    public void itemStateChanged(ItemEvent e) {
+      //the context is changed by the render thread between frames
+      final boolean selected = (e.getStateChange() == ItemEvent.SELECTED);
       if (e.getSource() == wireframeCheck) {
-         if (e.getStateChange() == ItemEvent.SELECTED) {
-            Surface.setWireframe(true);
-            canvas.setBackground(Color.WHITE);
-         } 
-         else {
-            Surface.setWireframe(false);
-            canvas.setBackground(Color.BLACK);
-         }
+         canvas.runOnRenderThread(
+            new Runnable() {
+               public void run() {
+                  context.setWireframe(selected);
+               }
+            });
+         canvas.setBackground(selected ? Color.WHITE : Color.BLACK);
+         this.requestFocusInWindow();
+      }
+      else if (e.getSource() == smoothCheck) {
+         canvas.runOnRenderThread(
+            new Runnable() {
+               public void run() {
+                  context.setSmoothShading(selected);
+               }
+            });
+         this.requestFocusInWindow();
+      }
+      else if (e.getSource() == capCheck) {
+         //capping to the refresh rate of the screen paces the frames like vsync
+         canvas.setFrameCap(selected ? canvas.getRefreshRate() : 0);
+         this.requestFocusInWindow();
+      }
+      else if (e.getSource() == statsCheck) {
+         canvas.runOnRenderThread(
+            new Runnable() {
+               public void run() {
+                  context.getProfiler().reset();
+                  context.getProfiler().setEnabled(selected);
+                  canvas.setOverlay(selected);
+               }
+            });
+         this.requestFocusInWindow();
+      }
+      else if (e.getSource() == detailCheck) {
+         canvas.runOnRenderThread(
+            new Runnable() {
+               public void run() {
+                  canvas.getScene().useLevelsOfDetail(selected);
+               }
+            });
          this.requestFocusInWindow();
       }
    }
@@ -103,12 +173,21 @@ public class ProjectionWindow extends JFrame implements ActionListener, ItemList
       if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
          System.exit(0);
       }
+      else if (e.getKeyCode() == KeyEvent.VK_P) {
+         try {
+            context.getProfiler().export("profile.csv");
+            context.getProfiler().export("profile.json");
+         }
+         catch (IOException ex) {
+            System.out.println("Could not write profile: " + ex.getMessage());
+         }
+      }
    }
    
    public void keyPressed(KeyEvent e) {}
    
    public void keyTyped(KeyEvent e) {}
- 
+   
    public static void main(String[] args) {
       SwingUtilities.invokeLater(
          new Runnable() {
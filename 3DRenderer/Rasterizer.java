@@ -0,0 +1,353 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+    This class draws surfaces straight into the pixels of a reusable image, using
+    edge functions to fill triangles and a depth buffer so the surfaces can be
+    drawn in any order. Convex polygons are split into a fan of triangles.
+    Polygons can be filled with one color, or with the light of each point
+    blended across them for smooth shading.
+    The image can also cover just a part of the screen starting at an origin,
+    which is how the tiles of the TiledRasterizer are drawn.
+    The rasterizer remembers the bounds of what it drew since it was last
+    cleared, so clearing only has to reset that part of the buffers.
+*/
+public class Rasterizer
+{
+   private BufferedImage image;
+   private int[] pixels;
+   private float[] depth;
+   private int width;
+   private int height;
+   private int originX;
+   private int originY;
+   private double perspectivePoint;
+   //bounds of the pixels drawn since the last clear, inclusive, empty when the
+   //minimum is larger than the maximum
+   private int drawnMinX, drawnMinY, drawnMaxX, drawnMaxY;
+   
+   public Rasterizer(int widthIn, int heightIn) {
+      perspectivePoint = 500;
+      setSize(widthIn, heightIn);
+   }
+   
+   /**
+       Resizes the image and depth buffer. Nothing is reallocated if the size
+       hasn't changed.
+   */
+   public void setSize(int widthIn, int heightIn) {
+      if ((image != null) && (widthIn == width) && (heightIn == height)) {
+         return;
+      }
+      width = widthIn;
+      height = heightIn;
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      depth = new float[width * height];
+      resetDrawnBounds();
+   }
+   
+   /**
+       Sets the distance of the perspective point of the camera. The depth buffer
+       stores 1 / (perspectivePoint + z), which unlike z can be interpolated
+       linearly across the screen.
+   */
+   public void setPerspectivePoint(double distance) {
+      perspectivePoint = distance;
+   }
+   
+   /**
+       Clears the image to transparent and resets the depth buffer. Only the part
+       drawn since the last clear is touched, the rest is still clear.
+   */
+   public void clear() {
+      if (drawnMinX > drawnMaxX) {
+         return;
+      }
+      if ((drawnMaxX - drawnMinX + 1) == width) {
+         Arrays.fill(pixels, drawnMinY * width, (drawnMaxY + 1) * width, 0);
+         Arrays.fill(depth, drawnMinY * width, (drawnMaxY + 1) * width, 0);
+      }
+      else {
+         for (int j = drawnMinY; j <= drawnMaxY; j++) {
+            int row = j * width;
+            Arrays.fill(pixels, row + drawnMinX, row + drawnMaxX + 1, 0);
+            Arrays.fill(depth, row + drawnMinX, row + drawnMaxX + 1, 0);
+         }
+      }
+      resetDrawnBounds();
+   }
+   
+   private void resetDrawnBounds() {
+      drawnMinX = width;
+      drawnMinY = height;
+      drawnMaxX = -1;
+      drawnMaxY = -1;
+   }
+   
+   /**
+       Stores the bounds of the pixels drawn since the last clear as minimum x,
+       minimum y, maximum x and maximum y in image coordinates, all inclusive, in
+       the given array.
+       @return boolean false if nothing was drawn
+   */
+   public boolean getDrawnBounds(int[] bounds) {
+      bounds[0] = drawnMinX;
+      bounds[1] = drawnMinY;
+      bounds[2] = drawnMaxX;
+      bounds[3] = drawnMaxY;
+      return drawnMinX <= drawnMaxX;
+   }
+   
+   /**
+       Sets the screen position of the upper left pixel of the image. Points given
+       to the rasterizer are always in screen coordinates.
+   */
+   public void setOrigin(int x, int y) {
+      originX = x;
+      originY = y;
+   }
+   
+   public BufferedImage getImage() {
+      return image;
+   }
+   
+   /**
+       Returns the pixels of the image, row by row.
+   */
+   public int[] getPixels() {
+      return pixels;
+   }
+   
+   public int getWidth() {
+      return width;
+   }
+   
+   public int getHeight() {
+      return height;
+   }
+   
+   /**
+       Fills a convex polygon given by indices into screen coordinate arrays.
+       @param x double[] screen x coordinates
+       @param y double[] screen y coordinates
+       @param z double[] depth of each point relative to the camera
+       @param indices int[] indices of the polygon points
+       @param start int position of the first index of the polygon
+       @param count int number of points in the polygon
+       @param argb int packed color
+   */
+   public void fillPolygon(double[] x, double[] y, double[] z, int[] indices, int start, int count, int argb) {
+      int a = indices[start];
+      double q0 = 1 / (perspectivePoint + z[a]);
+      for (int i = 2; i < count; i++) {
+         int b = indices[start + i - 1];
+         int c = indices[start + i];
+         fillTriangle(x[a] - originX, y[a] - originY, q0, 1,
+                      x[b] - originX, y[b] - originY, 1 / (perspectivePoint + z[b]), 1,
+                      x[c] - originX, y[c] - originY, 1 / (perspectivePoint + z[c]), 1, argb, false);
+      }
+   }
+   
+   /**
+       Fills a convex polygon like fillPolygon, with the color multiplied by the
+       light of each point blended linearly across the screen.
+       @param argb int packed color of the fully lit polygon
+       @param light float[] how much each point is lit, from 0 to 1
+   */
+   public void fillPolygon(double[] x, double[] y, double[] z, int[] indices, int start, int count,
+                           int argb, float[] light) {
+      int a = indices[start];
+      double q0 = 1 / (perspectivePoint + z[a]);
+      for (int i = 2; i < count; i++) {
+         int b = indices[start + i - 1];
+         int c = indices[start + i];
+         fillTriangle(x[a] - originX, y[a] - originY, q0, light[a],
+                      x[b] - originX, y[b] - originY, 1 / (perspectivePoint + z[b]), light[b],
+                      x[c] - originX, y[c] - originY, 1 / (perspectivePoint + z[c]), light[c], argb, true);
+      }
+   }
+   
+   /**
+       Fills triangles given by three indices each into screen coordinate arrays.
+       @param x double[] screen x coordinates
+       @param y double[] screen y coordinates
+       @param z double[] depth of each point relative to the camera
+       @param triangles int[] indices of the triangle points, three per triangle
+       @param first int the first triangle, counted in triangles
+       @param count int number of triangles
+       @param argb int packed color
+   */
+   public void fillTriangles(double[] x, double[] y, double[] z, int[] triangles, int first, int count, int argb) {
+      for (int i = first * 3; i < (first + count) * 3; i += 3) {
+         int a = triangles[i];
+         int b = triangles[i + 1];
+         int c = triangles[i + 2];
+         fillTriangle(x[a] - originX, y[a] - originY, 1 / (perspectivePoint + z[a]), 1,
+                      x[b] - originX, y[b] - originY, 1 / (perspectivePoint + z[b]), 1,
+                      x[c] - originX, y[c] - originY, 1 / (perspectivePoint + z[c]), 1, argb, false);
+      }
+   }
+   
+   /**
+       Fills triangles like fillTriangles, with the color multiplied by the light
+       of each point blended linearly across the screen.
+       @param argb int packed color of the fully lit triangles
+       @param light float[] how much each point is lit, from 0 to 1
+   */
+   public void fillTriangles(double[] x, double[] y, double[] z, int[] triangles, int first, int count,
+                             int argb, float[] light) {
+      for (int i = first * 3; i < (first + count) * 3; i += 3) {
+         int a = triangles[i];
+         int b = triangles[i + 1];
+         int c = triangles[i + 2];
+         fillTriangle(x[a] - originX, y[a] - originY, 1 / (perspectivePoint + z[a]), light[a],
+                      x[b] - originX, y[b] - originY, 1 / (perspectivePoint + z[b]), light[b],
+                      x[c] - originX, y[c] - originY, 1 / (perspectivePoint + z[c]), light[c], argb, true);
+      }
+   }
+   
+   /**
+       Draws the outline of a polygon without depth testing.
+   */
+   public void drawPolygon(double[] x, double[] y, int[] indices, int start, int count, int argb) {
+      for (int i = 0; i < count; i++) {
+         int a = indices[start + i];
+         int b = indices[start + ((i + 1) % count)];
+         drawLine((int)x[a] - originX, (int)y[a] - originY, (int)x[b] - originX, (int)y[b] - originY, argb);
+      }
+   }
+   
+   /**
+       Fills a triangle given in image coordinates. Pixels are covered when their
+       center is inside the triangle, and pixels on an edge shared by two triangles
+       are only drawn by the triangle the edge is a top or left edge of. When
+       shaded, the color is multiplied by the light l of the points blended across
+       the triangle.
+   */
+   private void fillTriangle(double x0, double y0, double q0, double l0,
+                             double x1, double y1, double q1, double l1,
+                             double x2, double y2, double q2, double l2, int argb, boolean shaded) {
+      double area = ((x1 - x0) * (y2 - y0)) - ((y1 - y0) * (x2 - x0));
+      if (area == 0 || Double.isNaN(area)) {
+         return;
+      }
+      if (area < 0) {
+         double t = x1;
+         x1 = x2;
+         x2 = t;
+         t = y1;
+         y1 = y2;
+         y2 = t;
+         t = q1;
+         q1 = q2;
+         q2 = t;
+         t = l1;
+         l1 = l2;
+         l2 = t;
+         area = -area;
+      }
+      
+      int minX = Math.max(0, (int)Math.floor(Math.min(x0, Math.min(x1, x2))));
+      int maxX = Math.min(width - 1, (int)Math.ceil(Math.max(x0, Math.max(x1, x2))));
+      int minY = Math.max(0, (int)Math.floor(Math.min(y0, Math.min(y1, y2))));
+      int maxY = Math.min(height - 1, (int)Math.ceil(Math.max(y0, Math.max(y1, y2))));
+      if ((minX > maxX) || (minY > maxY)) {
+         return;
+      }
+      drawnMinX = Math.min(drawnMinX, minX);
+      drawnMinY = Math.min(drawnMinY, minY);
+      drawnMaxX = Math.max(drawnMaxX, maxX);
+      drawnMaxY = Math.max(drawnMaxY, maxY);
+      
+      //edge i is opposite of point i, so its value is the weight of point i
+      double dx0 = x2 - x1;
+      double dy0 = y2 - y1;
+      double dx1 = x0 - x2;
+      double dy1 = y0 - y2;
+      double dx2 = x1 - x0;
+      double dy2 = y1 - y0;
+      boolean topLeft0 = (dy0 < 0) || ((dy0 == 0) && (dx0 > 0));
+      boolean topLeft1 = (dy1 < 0) || ((dy1 == 0) && (dx1 > 0));
+      boolean topLeft2 = (dy2 < 0) || ((dy2 == 0) && (dx2 > 0));
+      
+      double px = minX + 0.5;
+      double py = minY + 0.5;
+      double row0 = (dx0 * (py - y1)) - (dy0 * (px - x1));
+      double row1 = (dx1 * (py - y2)) - (dy1 * (px - x2));
+      double row2 = (dx2 * (py - y0)) - (dy2 * (px - x0));
+      
+      double invArea = 1 / area;
+      float[] depthBuffer = depth;
+      int[] pixelBuffer = pixels;
+      
+      for (int j = minY; j <= maxY; j++) {
+         double e0 = row0;
+         double e1 = row1;
+         double e2 = row2;
+         int index = (j * width) + minX;
+         for (int i = minX; i <= maxX; i++) {
+            if (((e0 > 0) || ((e0 == 0) && topLeft0)) &&
+                ((e1 > 0) || ((e1 == 0) && topLeft1)) &&
+                ((e2 > 0) || ((e2 == 0) && topLeft2))) {
+               float q = (float)(((e0 * q0) + (e1 * q1) + (e2 * q2)) * invArea);
+               if (q > depthBuffer[index]) {
+                  depthBuffer[index] = q;
+                  if (shaded) {
+                     pixelBuffer[index] = Lighting.scale(argb, ((e0 * l0) + (e1 * l1) + (e2 * l2)) * invArea);
+                  }
+                  else {
+                     pixelBuffer[index] = argb;
+                  }
+               }
+            }
+            e0 -= dy0;
+            e1 -= dy1;
+            e2 -= dy2;
+            index++;
+         }
+         row0 += dx0;
+         row1 += dx1;
+         row2 += dx2;
+      }
+   }
+   
+   private void drawLine(int x0, int y0, int x1, int y1, int argb) {
+      int dx = Math.abs(x1 - x0);
+      int dy = -Math.abs(y1 - y0);
+      int stepX = (x0 < x1) ? 1 : -1;
+      int stepY = (y0 < y1) ? 1 : -1;
+      int error = dx + dy;
+      
+      int minX = Math.max(0, Math.min(x0, x1));
+      int minY = Math.max(0, Math.min(y0, y1));
+      int maxX = Math.min(width - 1, Math.max(x0, x1));
+      int maxY = Math.min(height - 1, Math.max(y0, y1));
+      if ((minX > maxX) || (minY > maxY)) {
+         return;
+      }
+      drawnMinX = Math.min(drawnMinX, minX);
+      drawnMinY = Math.min(drawnMinY, minY);
+      drawnMaxX = Math.max(drawnMaxX, maxX);
+      drawnMaxY = Math.max(drawnMaxY, maxY);
+      
+      while (true) {
+         if ((x0 >= 0) && (x0 < width) && (y0 >= 0) && (y0 < height)) {
+            pixels[(y0 * width) + x0] = argb;
+         }
+         if ((x0 == x1) && (y0 == y1)) {
+            break;
+         }
+         int doubleError = 2 * error;
+         if (doubleError >= dy) {
+            error += dy;
+            x0 += stepX;
+         }
+         if (doubleError <= dx) {
+            error += dx;
+            y0 += stepY;
+         }
+      }
+   }
+}
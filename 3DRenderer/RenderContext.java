@@ -0,0 +1,264 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+    This class holds everything needed to draw one scene: the camera, the light
+    sources, the drawing switches and the per frame draw stack, along with the
+    buffers of the rasterizers. Each scene has its own context, so several
+    scenes can be drawn at the same time from different threads. A model should
+    only be drawn with one context at a time.
+*/
+public class RenderContext
+{
+   private Camera cam;
+   private boolean wireframe;
+   private boolean smoothShading;
+   private Vector[] lightSource;
+   private double[] lightRange;
+   private int numbLights;
+   private Lighting lighting;
+   private boolean lightingPrepared;
+   private int renderMode;
+   private DepthSorter drawStack;
+   private FrameProfiler profiler;
+   private FrameBuffer frameBuffer;
+   private Rasterizer rasterizer;
+   private TiledRasterizer tiledRasterizer;
+   private Color targetBackground;
+   //bounds of the part of the target the last frame was presented over,
+   //inclusive, empty when the minimum is larger than the maximum
+   private int[] presentedBounds;
+   
+   /**
+       Draws the surfaces with Java2D in order of depth.
+   */
+   public static final int JAVA2D = 0;
+   
+   /**
+       Draws the surfaces with the software rasterizer and a depth buffer.
+   */
+   public static final int Z_BUFFER = 1;
+   
+   /**
+       Draws the surfaces with a depth buffer, splitting the screen into tiles
+       that are rasterized in parallel.
+   */
+   public static final int TILED = 2;
+   
+   public RenderContext(Camera camIn) {
+      cam = camIn;
+      wireframe = false;
+      smoothShading = false;
+      lightSource = new Vector[0];
+      lightRange = new double[0];
+      numbLights = 0;
+      lighting = new Lighting();
+      lightingPrepared = false;
+      renderMode = JAVA2D;
+      drawStack = new DepthSorter();
+      profiler = new FrameProfiler();
+      frameBuffer = null;
+      rasterizer = null;
+      tiledRasterizer = null;
+      targetBackground = null;
+      presentedBounds = new int[] {0, 0, -1, -1};
+   }
+   
+   public void setCamera(Camera camIn) {
+      cam = camIn;
+   }
+   
+   public Camera getCamera() {
+      return cam;
+   }
+   
+   /**
+       Switch for whether to display as wire frame or filled surfaces.
+   */
+   public void setWireframe(boolean state) {
+      wireframe = state;
+   }
+   
+   public boolean isWireframe() {
+      return wireframe;
+   }
+   
+   /**
+       Switch for smooth shading, which lights the points of the meshes and blends
+       their light across each surface instead of lighting each surface evenly.
+   */
+   public void setSmoothShading(boolean state) {
+      smoothShading = state;
+   }
+   
+   public boolean isSmoothShading() {
+      return smoothShading;
+   }
+   
+   /**
+       Switch for how the surfaces are drawn, either JAVA2D, Z_BUFFER or TILED.
+   */
+   public void setRenderMode(int mode) {
+      renderMode = mode;
+   }
+   
+   public int getRenderMode() {
+      return renderMode;
+   }
+   
+   /**
+       Sets whether sorting the draw stack starts from the order of the previous
+       frame, which is faster when the scene changes little between frames.
+   */
+   public void setSortWarmStart(boolean state) {
+      drawStack.setWarmStart(state);
+   }
+   
+   /**
+       Tells the context the graphics the frames are drawn onto keep their
+       pixels from one frame to the next and were filled with the given
+       background once. Each frame then only the part covered by the last frame
+       or this one is filled with the background again, rather than the caller
+       filling the whole graphics. With null, the default, the caller fills the
+       graphics itself every frame, as a screen's back buffer needs.
+   */
+   public void setTargetBackground(Color background) {
+      targetBackground = background;
+      presentedBounds[0] = 0;
+      presentedBounds[1] = 0;
+      presentedBounds[2] = -1;
+      presentedBounds[3] = -1;
+   }
+   
+   public Color getTargetBackground() {
+      return targetBackground;
+   }
+   
+   /**
+       Returns the bounds of the part of the target the last frame was presented
+       over, which Surface updates as it presents each frame.
+   */
+   int[] getPresentedBounds() {
+      return presentedBounds;
+   }
+   
+   /**
+       Adds a light source to the scene that lights everything facing it.
+   */
+   public void addLightSource(Vector source) {
+      addLightSource(source, Double.POSITIVE_INFINITY);
+   }
+   
+   /**
+       Adds a light source to the scene that fades out with distance and doesn't
+       reach past the given range. Surfaces only check the ranged lights near
+       them, so a scene can have many of them.
+   */
+   public void addLightSource(Vector source, double range) {
+      if (numbLights >= lightSource.length) {
+         lightSource = Arrays.copyOf(lightSource, Math.max(2, numbLights * 2));
+         lightRange = Arrays.copyOf(lightRange, lightSource.length);
+      }
+      lightSource[numbLights] = source;
+      lightRange[numbLights] = range;
+      numbLights++;
+      lightingPrepared = false;
+   }
+   
+   /**
+       Moves the given light source. The lights are only read again when one is
+       added or moved, so a light should be moved here rather than by changing
+       its vector.
+   */
+   public void setLightSource(int index, Vector source) {
+      lightSource[index] = source;
+      lightingPrepared = false;
+   }
+   
+   public Vector getLightSource(int index) {
+      return lightSource[index];
+   }
+   
+   /**
+       Returns the range of the given light, which is infinite for lights
+       without one.
+   */
+   public double getLightRange(int index) {
+      return lightRange[index];
+   }
+   
+   public int getNumbLights() {
+      return numbLights;
+   }
+   
+   /**
+       Returns the lighting of the light sources, preparing it again if a light
+       was added or moved since it was last used.
+   */
+   public Lighting getLighting() {
+      if (!lightingPrepared) {
+         lighting.prepare(this);
+         lightingPrepared = true;
+      }
+      return lighting;
+   }
+   
+   /**
+       Empties the draw stack once the frame has been drawn, and records the
+       times of its stages if the profiler is enabled or a flight recording is
+       running.
+   */
+   public void endFrame() {
+      profiler.endFrame(drawStack.size(), numbLights);
+      drawStack.clear();
+   }
+   
+   /**
+       Returns the profiler timing the stages of the frames drawn with this context.
+   */
+   public FrameProfiler getProfiler() {
+      return profiler;
+   }
+   
+   /**
+       Returns the stack the visible surfaces of the current frame are added to.
+   */
+   public DepthSorter getDrawStack() {
+      return drawStack;
+   }
+   
+   /**
+       Returns the image the JAVA2D mode draws into, sized to the camera.
+   */
+   public FrameBuffer getFrameBuffer() {
+      if (frameBuffer == null) {
+         frameBuffer = new FrameBuffer(cam.getWidth(), cam.getHeight());
+      }
+      frameBuffer.setSize(cam.getWidth(), cam.getHeight());
+      return frameBuffer;
+   }
+   
+   /**
+       Returns the rasterizer for the Z_BUFFER mode, sized to the camera.
+   */
+   public Rasterizer getRasterizer() {
+      if (rasterizer == null) {
+         rasterizer = new Rasterizer(cam.getWidth(), cam.getHeight());
+      }
+      rasterizer.setSize(cam.getWidth(), cam.getHeight());
+      rasterizer.setPerspectivePoint(cam.getPerspectivePoint());
+      return rasterizer;
+   }
+   
+   /**
+       Returns the rasterizer for the TILED mode, sized to the camera.
+   */
+   public TiledRasterizer getTiledRasterizer() {
+      if (tiledRasterizer == null) {
+         tiledRasterizer = new TiledRasterizer(cam.getWidth(), cam.getHeight());
+      }
+      tiledRasterizer.setSize(cam.getWidth(), cam.getHeight());
+      tiledRasterizer.setPerspectivePoint(cam.getPerspectivePoint());
+      return tiledRasterizer;
+   }
+}
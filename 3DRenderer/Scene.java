@@ -0,0 +1,428 @@
+import java.util.Arrays;
+
+/**
+    This class holds the models of a scene in a bounding volume hierarchy, so
+    the models in view of the camera can be found without testing every model.
+    Each model is bounded by a box around its position that contains it in any
+    rotation, so rotating a model never changes the hierarchy. Moving, scaling
+    or changing the mesh of a model marks it, and only the boxes from its leaf
+    up to the root are refit before the next query.
+    
+    The hierarchy is rebuilt when models are added or removed. Refitting keeps
+    it correct but not tight, so call rebuild after the models have moved far
+    from where they were when it was built.
+*/
+public class Scene
+{
+   private Model[] models;
+   private int numbModels;
+   private int frame;
+   
+   //the nodes of the hierarchy. Node i has its box in bounds[6i] to bounds[6i + 5]
+   //as minimum x, y, z and maximum x, y, z. An inner node has its children in
+   //children[2i] and children[2i + 1], a leaf has -1 and the index of its model.
+   private double[] bounds;
+   private int[] children;
+   private int[] parent;
+   private int numbNodes;
+   private int root;
+   private boolean needsRebuild;
+   private int[] leafOfModel;
+   
+   //models that moved since the last refit
+   private int[] moved;
+   private int numbMoved;
+   private boolean[] isMoved;
+   
+   //results of the last query
+   private Model[] visible;
+   private int numbVisible;
+   private double[] viewPlanes;
+   
+   public Scene() {
+      models = new Model[16];
+      numbModels = 0;
+      frame = 0;
+      bounds = new double[0];
+      children = new int[0];
+      parent = new int[0];
+      numbNodes = 0;
+      root = -1;
+      needsRebuild = false;
+      leafOfModel = new int[16];
+      moved = new int[16];
+      numbMoved = 0;
+      isMoved = new boolean[16];
+      visible = new Model[16];
+      numbVisible = 0;
+      viewPlanes = new double[20];
+   }
+   
+   /**
+       Adds a model to the scene. A model can only be in one scene at a time.
+   */
+   public void add(Model model) {
+      if (model.scene != null) {
+         model.scene.remove(model);
+      }
+      if (numbModels == models.length) {
+         int capacity = numbModels * 2;
+         models = Arrays.copyOf(models, capacity);
+         leafOfModel = Arrays.copyOf(leafOfModel, capacity);
+         moved = Arrays.copyOf(moved, capacity);
+         isMoved = Arrays.copyOf(isMoved, capacity);
+      }
+      model.scene = this;
+      model.sceneIndex = numbModels;
+      models[numbModels] = model;
+      numbModels++;
+      needsRebuild = true;
+   }
+   
+   /**
+       Removes a model from the scene. The last model takes its place.
+   */
+   public void remove(Model model) {
+      if (model.scene != this) {
+         return;
+      }
+      int index = model.sceneIndex;
+      numbModels--;
+      models[index] = models[numbModels];
+      models[index].sceneIndex = index;
+      models[numbModels] = null;
+      model.scene = null;
+      model.sceneIndex = -1;
+      needsRebuild = true;
+   }
+   
+   public int getNumbModels() {
+      return numbModels;
+   }
+   
+   public Model getModel(int index) {
+      return models[index];
+   }
+   
+   /**
+       Returns the number of the current frame, which goes up by one every time
+       the scene is drawn.
+   */
+   public int getFrame() {
+      return frame;
+   }
+   
+   /**
+       Finds the models in view of the camera and adds their visible surfaces to
+       the draw stack of the context.
+   */
+   public void setDrawStack(RenderContext context) {
+      FrameProfiler profiler = context.getProfiler();
+      long time = profiler.start();
+      findVisible(context.getCamera());
+      profiler.lap(FrameProfiler.VISIBILITY, time);
+      for (int i = 0; i < numbVisible; i++) {
+         visible[i].setDrawStack(context);
+      }
+      frame++;
+   }
+   
+   /**
+       Finds the models whose bounds are at least partly in view of the camera.
+       They can be read with getVisible until the next query.
+       @return int number of models found
+   */
+   public int findVisible(Camera cam) {
+      update();
+      setViewPlanes(cam);
+      numbVisible = 0;
+      if (root >= 0) {
+         findVisible(root, (1 << 5) - 1);
+      }
+      return numbVisible;
+   }
+   
+   /**
+       Finds the visible models like findVisible, but by testing the bounds of
+       every model, for checking and measuring the hierarchy.
+   */
+   int findVisibleLinear(Camera cam) {
+      update();
+      setViewPlanes(cam);
+      numbVisible = 0;
+      for (int i = 0; i < numbModels; i++) {
+         if (isInView(leafOfModel[i], (1 << 5) - 1) >= 0) {
+            addVisible(models[i]);
+         }
+      }
+      return numbVisible;
+   }
+   
+   /**
+       Returns the models found by the last query. Only the first
+       getNumbVisible of them are valid.
+   */
+   public Model[] getVisible() {
+      return visible;
+   }
+   
+   public int getNumbVisible() {
+      return numbVisible;
+   }
+   
+   /**
+       Builds the hierarchy again from the current bounds of the models.
+   */
+   public void rebuild() {
+      needsRebuild = true;
+      update();
+   }
+   
+   /**
+       Marks a model as moved, called by the model when its position, scale,
+       axes or mesh change.
+   */
+   void modelMoved(Model model) {
+      int index = model.sceneIndex;
+      if (!needsRebuild && !isMoved[index]) {
+         isMoved[index] = true;
+         moved[numbMoved] = index;
+         numbMoved++;
+      }
+   }
+   
+   /**
+       Rebuilds the hierarchy if models were added or removed, otherwise refits
+       the boxes of the models that moved.
+   */
+   private void update() {
+      if (needsRebuild) {
+         build();
+      }
+      for (int i = 0; i < numbMoved; i++) {
+         int index = moved[i];
+         isMoved[index] = false;
+         int node = leafOfModel[index];
+         setModelBounds(node, models[index]);
+         node = parent[node];
+         while (node >= 0) {
+            fitChildren(node);
+            node = parent[node];
+         }
+      }
+      numbMoved = 0;
+   }
+   
+   private void build() {
+      int capacity = Math.max(1, (numbModels * 2) - 1);
+      if (bounds.length < capacity * 6) {
+         bounds = new double[capacity * 6];
+         children = new int[capacity * 2];
+         parent = new int[capacity];
+      }
+      numbNodes = 0;
+      root = -1;
+      for (int i = 0; i < numbMoved; i++) {
+         isMoved[moved[i]] = false;
+      }
+      numbMoved = 0;
+      needsRebuild = false;
+      if (numbModels == 0) {
+         return;
+      }
+      
+      //the models are split at the median of their centers along the longest
+      //axis of the centers, which keeps the tree balanced
+      int[] order = new int[numbModels];
+      double[] centers = new double[numbModels * 3];
+      for (int i = 0; i < numbModels; i++) {
+         order[i] = i;
+         Vector position = models[i].getPosition();
+         centers[i * 3] = position.getXD();
+         centers[(i * 3) + 1] = position.getYD();
+         centers[(i * 3) + 2] = position.getZD();
+      }
+      root = build(order, centers, 0, numbModels, -1);
+   }
+   
+   private int build(int[] order, double[] centers, int start, int end, int parentNode) {
+      int node = numbNodes;
+      numbNodes++;
+      parent[node] = parentNode;
+      
+      if (end - start == 1) {
+         int index = order[start];
+         children[node * 2] = -1;
+         children[(node * 2) + 1] = index;
+         leafOfModel[index] = node;
+         setModelBounds(node, models[index]);
+         return node;
+      }
+      
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double minZ = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      double maxZ = Double.NEGATIVE_INFINITY;
+      for (int i = start; i < end; i++) {
+         int c = order[i] * 3;
+         minX = Math.min(minX, centers[c]);
+         minY = Math.min(minY, centers[c + 1]);
+         minZ = Math.min(minZ, centers[c + 2]);
+         maxX = Math.max(maxX, centers[c]);
+         maxY = Math.max(maxY, centers[c + 1]);
+         maxZ = Math.max(maxZ, centers[c + 2]);
+      }
+      int axis = 0;
+      if ((maxY - minY > maxX - minX) && (maxY - minY >= maxZ - minZ)) {
+         axis = 1;
+      }
+      else if (maxZ - minZ > Math.max(maxX - minX, maxY - minY)) {
+         axis = 2;
+      }
+      
+      int middle = (start + end) / 2;
+      select(order, centers, axis, start, end - 1, middle);
+      
+      children[node * 2] = build(order, centers, start, middle, node);
+      children[(node * 2) + 1] = build(order, centers, middle, end, node);
+      fitChildren(node);
+      return node;
+   }
+   
+   /**
+       Partially sorts order from left to right so the element at position k
+       is in place, with no smaller center after it and no larger one before it.
+   */
+   private static void select(int[] order, double[] centers, int axis, int left, int right, int k) {
+      while (left < right) {
+         double pivot = centers[(order[(left + right) >>> 1] * 3) + axis];
+         int i = left;
+         int j = right;
+         while (i <= j) {
+            while (centers[(order[i] * 3) + axis] < pivot) {
+               i++;
+            }
+            while (centers[(order[j] * 3) + axis] > pivot) {
+               j--;
+            }
+            if (i <= j) {
+               int temp = order[i];
+               order[i] = order[j];
+               order[j] = temp;
+               i++;
+               j--;
+            }
+         }
+         if (k <= j) {
+            right = j;
+         }
+         else if (k >= i) {
+            left = i;
+         }
+         else {
+            return;
+         }
+      }
+   }
+   
+   private void setModelBounds(int node, Model model) {
+      Vector position = model.getPosition();
+      double radius = model.getBoundingRadius();
+      int b = node * 6;
+      bounds[b] = position.getXD() - radius;
+      bounds[b + 1] = position.getYD() - radius;
+      bounds[b + 2] = position.getZD() - radius;
+      bounds[b + 3] = position.getXD() + radius;
+      bounds[b + 4] = position.getYD() + radius;
+      bounds[b + 5] = position.getZD() + radius;
+   }
+   
+   private void fitChildren(int node) {
+      int b = node * 6;
+      int left = children[node * 2] * 6;
+      int right = children[(node * 2) + 1] * 6;
+      for (int i = 0; i < 3; i++) {
+         bounds[b + i] = Math.min(bounds[left + i], bounds[right + i]);
+         bounds[b + 3 + i] = Math.max(bounds[left + 3 + i], bounds[right + 3 + i]);
+      }
+   }
+   
+   /**
+       Stores the planes bounding the view of the camera in world coordinates,
+       the same planes Model uses in model coordinates.
+   */
+   private void setViewPlanes(Camera cam) {
+      Matrix4x4 viewProjection = cam.getProjectionMatrix().multiply(cam.getViewMatrix());
+      double width = cam.getWidth();
+      double height = cam.getHeight();
+      for (int column = 0; column < 4; column++) {
+         double screenX = viewProjection.getElement(0, column);
+         double screenY = viewProjection.getElement(1, column);
+         double depth = viewProjection.getElement(2, column);
+         double w = viewProjection.getElement(3, column);
+         viewPlanes[column] = screenX;
+         viewPlanes[4 + column] = (width * w) - screenX;
+         viewPlanes[8 + column] = screenY;
+         viewPlanes[12 + column] = (height * w) - screenY;
+         viewPlanes[16 + column] = depth;
+      }
+      viewPlanes[19] += 1;
+   }
+   
+   private void findVisible(int node, int planeMask) {
+      planeMask = isInView(node, planeMask);
+      if (planeMask < 0) {
+         return;
+      }
+      if (children[node * 2] < 0) {
+         addVisible(models[children[(node * 2) + 1]]);
+         return;
+      }
+      findVisible(children[node * 2], planeMask);
+      findVisible(children[(node * 2) + 1], planeMask);
+   }
+   
+   /**
+       Tests the box of a node against the view planes in the mask. Returns -1
+       if the box is outside of one of them, otherwise the mask without the
+       planes the box is completely inside of, which the children don't need to
+       be tested against.
+   */
+   private int isInView(int node, int planeMask) {
+      int b = node * 6;
+      for (int i = 0; i < 5; i++) {
+         if ((planeMask & (1 << i)) != 0) {
+            double a = viewPlanes[i * 4];
+            double c = viewPlanes[(i * 4) + 1];
+            double e = viewPlanes[(i * 4) + 2];
+            double d = viewPlanes[(i * 4) + 3];
+            //corners of the box farthest along and against the plane normal
+            double far = (a * bounds[b + ((a >= 0) ? 3 : 0)]) + (c * bounds[b + ((c >= 0) ? 4 : 1)])
+                         + (e * bounds[b + ((e >= 0) ? 5 : 2)]) + d;
+            if (far < 0) {
+               return -1;
+            }
+            double near = (a * bounds[b + ((a >= 0) ? 0 : 3)]) + (c * bounds[b + ((c >= 0) ? 1 : 4)])
+                          + (e * bounds[b + ((e >= 0) ? 2 : 5)]) + d;
+            if (near >= 0) {
+               planeMask &= ~(1 << i);
+            }
+         }
+      }
+      return planeMask;
+   }
+   
+   private void addVisible(Model model) {
+      if (numbVisible == visible.length) {
+         Model[] temp = visible;
+         visible = new Model[numbVisible * 2];
+         for (int i = 0; i < numbVisible; i++) {
+            visible[i] = temp[i];
+         }
+      }
+      visible[numbVisible] = model;
+      numbVisible++;
+   }
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+    Flight recorder event spanning one run of a stage of drawing a frame. The
+    stages of the models run once for each model in view, the others once for
+    the whole draw stack. Recorded by the FrameProfiler.
+*/
+@Name("renderer.Stage")
+@Label("Render Stage")
+@Category("Renderer")
+@Description("A stage of drawing a frame")
+@StackTrace(false)
+public class StageEvent extends jdk.jfr.Event
+{
+   @Label("Frame")
+   @Description("Number of the frame the stage is part of")
+   long frame;
+   
+   @Label("Stage")
+   String stage;
+}
@@ -1,70 +1,84 @@
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Path2D;
-import java.awt.AlphaComposite;
 import java.awt.image.BufferedImage;
 import java.awt.RenderingHints;
+import java.util.Arrays;
 
 /**
     This class is used to store information about an individual surface,
-    including its color, lighting corrected color, points with respect to the 3D
-    world, and points with respect to the 2D surface of the screen. It's also used
+    including its color, lighting corrected color, and the indices of its points
+    in the owning model, which holds the points with respect to the 3D world and
+    with respect to the 2D surface of the screen. Surfaces loaded from a file
+    read their indices straight from the shared index array of the mesh, and are
+    filled with the triangles the mesh split them into, so each copy of a model
+    only adds the per copy color and depth. It's also used
     to determine the order in which the surfaces are drawn to the screen.
+    Everything shared by the surfaces of a scene is kept in a RenderContext.
 */
 public class Surface
 {
-   private Vector[] points;
-   private Vector[] worldPoints;
+   private Model model;
+   private int[] indices;
+   //position of the first index of the surface in the indices array
+   private int start;
    private int numbPoints;
+   private boolean sharedIndices;
+   //index of the surface in the mesh of the model, or -1 if the surface was
+   //built point by point or has had points added, and isn't part of the mesh
+   private int meshSurface;
+   //the triangles of the mesh the surface was split into, or null if the
+   //surface was built point by point and is filled as a fan of its points
+   private int[] triangles;
+   private int firstTriangle;
+   private int numbTriangles;
    private Color fillColor;
-   private Color lightCorrectedFill;
+   //the fill color and the lit color of the frame as packed ARGB, and the Color
+   //last made from the lit one for drawing with Java2D
+   private int fillRGB;
+   private int shadedRGB;
+   private Color shadedColor;
+   //whether the surface is drawn this frame with the light of its points blended
+   //across it
+   private boolean smooth;
    private double depth;
    private boolean colorCorrected;
    
-   private static Surface[] drawOrder = new Surface[50];
-   private static boolean wireframe = false;
-   private static int visibleSurfaces = 0;
-   private static Vector[] lightSource = new Vector[0];
-   private static Camera cam = null;
-   private static int numbLights = 0;
+   //position of the surface in the sorted draw stack of the frame it was sorted
+   //in, used by the sorter to start from the previous frame's order.
+   int sortFrame;
+   int sortPosition;
    
-   public Surface() {
-      points = new Vector[5];
-      worldPoints = new Vector[5];
+   public Surface(Model modelIn) {
+      model = modelIn;
+      indices = new int[5];
+      start = 0;
       numbPoints = 0;
-      fillColor = Color.WHITE;
+      sharedIndices = false;
+      meshSurface = -1;
+      triangles = null;
+      firstTriangle = 0;
+      numbTriangles = 0;
+      setFillColor(Color.WHITE);
       depth = 0;
       colorCorrected = true;
    }
    
    /**
-       Sets the global reference for the camera object.
+       Creates a view of the given surface of the mesh of the model. The indices
+       are read from the shared index array of the mesh, not copied.
    */
-   public static void setCamera(Camera camIn) {
-      cam = camIn;
-   }
-   
-   /**
-       Global switch for wireframe whether to display as wire frame
-       or filled surfaces.
-   */
-   public static void setWireframe(boolean state) {
-      wireframe = state;
-   }
-   
-   /**
-       Adds a light source to the system.
-   */
-   public static void addLightSource(Vector source) {
-      if (numbLights >= lightSource.length) {
-         Vector[] temp = lightSource;
-         lightSource = new Vector[numbLights + 2];
-         for (int i = 0; i < temp.length; i++) {
-            lightSource[i] = temp[i];
-         }
-      }
-      lightSource[numbLights] = source;
-      numbLights++;
+   Surface(Model modelIn, Mesh mesh, int surface) {
+      this(modelIn);
+      indices = mesh.getIndices();
+      start = mesh.getSurfaceStart(surface);
+      numbPoints = mesh.getSurfaceSize(surface);
+      sharedIndices = true;
+      meshSurface = surface;
+      triangles = mesh.getTriangles();
+      firstTriangle = mesh.getTriangleStart(surface);
+      numbTriangles = mesh.getTriangleCount(surface);
+      setFillColor(mesh.getColor(surface));
    }
    
    /**
@@ -75,23 +89,42 @@ public class Surface
    }
    
    /**
-       Adds the references of each point that make up the surface,
-       both in world coordinates and coordinates relative to the camera.
+       Adds the index of a point of the owning model to the surface. The point
+       coordinates themselves are read from the model's coordinate arrays.
    */
-   public void add(Vector pointIn, Vector worldPointIn) {
-      if (numbPoints == points.length) {
-         Vector[] temp = points;
-         Vector[] temp1 = worldPoints;
-         points = new Vector[numbPoints + 50];
-         worldPoints = new Vector[numbPoints + 50];
+   public void add(int index) {
+      if (sharedIndices) {
+         indices = Arrays.copyOfRange(indices, start, start + numbPoints + 5);
+         start = 0;
+         sharedIndices = false;
+         //the normal, plane and centroid of the mesh surface no longer fit it
+         meshSurface = -1;
+         triangles = null;
+      }
+      else if (numbPoints == indices.length) {
+         int[] temp = indices;
+         indices = new int[numbPoints + 50];
          for (int i = 0; i < numbPoints; i++) {
-            points[i] = temp[i];
-            worldPoints[i] = temp1[i];
+            indices[i] = temp[i];
          }
       }
-      points[numbPoints] = pointIn;
-      worldPoints[numbPoints] = worldPointIn;
+      indices[numbPoints] = index;
       numbPoints++;
+      if (model != null) {
+         model.surfaceChanged();
+      }
+   }
+   
+   public int getIndex(int i) {
+      return indices[start + i];
+   }
+   
+   public int getNumbPoints() {
+      return numbPoints;
+   }
+   
+   public Color getFillColor() {
+      return fillColor;
    }
    
    /**
@@ -99,130 +132,375 @@ public class Surface
    */
    public void setFillColor(Color colorIn) {
       fillColor = colorIn;
-      lightCorrectedFill = fillColor;
+      fillRGB = fillColor.getRGB() | 0xFF000000;
+      shadedRGB = fillRGB;
+   }
+   
+   /**
+       Adds the surface to the draw stack of the context if it is visible. The stack
+       is put in the order of closest to farthest from the screen when it is drawn.
+   */
+   public void addToDrawStack(RenderContext context) {
+      if (addIfVisible(context)) {
+         shade(context);
+      }
    }
    
    /**
-       Adds the surface to the global draw stack in the order of closest to farthest
-       from the screen.
+       Adds the surface to the draw stack of the context if it is visible, without
+       shading it. Models add all their visible surfaces first and then shade
+       them, so the time spent on each can be told apart.
+       @return boolean whether the surface was added
    */
-   public void addToDrawStack() {
+   boolean addIfVisible(RenderContext context) {
       //checks if the surface is visible
-      if (isVisible()) {
-         //determines whether or not to make use of the lighting system.
-         //only does so if the wireframe diagram switch is off, the light
-         //corrected switch is on, and a light source exists. Otherwise,
-         //the surface colors are not changed.
-         if ((numbLights > 0) && (!wireframe) && colorCorrected) {
-            setLighting();
-         }
-         
-         //determines where to place the surface in the draw stack.
-         if (drawOrder.length < visibleSurfaces + 1) {
-            Surface[] temp = drawOrder;
-            drawOrder = new Surface[visibleSurfaces + 50];
-            for (int i = 0; i < visibleSurfaces; i++) {
-               drawOrder[i] = temp[i];
-            }
-            //System.out.println("Expand array: " + drawOrder.length);
-         }
-         
-         int left = 0;
-         int right = visibleSurfaces - 1;
-         int insertIndex = 0;
-         if (right > left) {
-            insertIndex = left + ((right - left) / 2);
-            double otherDepth = drawOrder[insertIndex].depth;
-            while ((otherDepth != depth) && (left != right)) {
-               if (depth < otherDepth) {
-                  right = (insertIndex - 1 >= left) ? insertIndex - 1 : left;
-               }
-               if (depth > otherDepth) {
-                  left = (insertIndex + 1 <= right) ? insertIndex + 1 : right;
-               }
-               insertIndex = left + ((right - left) / 2);
-               otherDepth = drawOrder[insertIndex].depth;
-            }
-         }
-            
-         visibleSurfaces++;
-         for (int i = visibleSurfaces - 1;(i > insertIndex) && (i > 0); i--) {
-            drawOrder[i] = drawOrder[i - 1];
-         }
-         drawOrder[insertIndex] = this;
+      if (isVisible(context.getCamera(), context.isWireframe())) {
+         //the surfaces are sorted by depth once all of them have been added
+         context.getDrawStack().add(this, depth);
+         return true;
       }
+      return false;
    }
    
    /**
-       Calculates the shading of the surface given the light source locations
+       Sets the color the surface is drawn with this frame.
    */
-   private void setLighting() {
-      Vector line1 = worldPoints[1].subtract(worldPoints[0]);
-      
-      Vector line2 = worldPoints[2].subtract(worldPoints[1]);
-      
-      Vector surfaceNormal = line1.cross(line2).normalize();
-      
-      Vector sum = new Vector();
+   void shade(RenderContext context) {
+      //determines whether or not to make use of the lighting system.
+      //only does so if the wireframe diagram switch is off, the light
+      //corrected switch is on, and a light source exists. Otherwise,
+      //the surface colors are not changed.
+      if ((context.getNumbLights() > 0) && (!context.isWireframe()) && colorCorrected) {
+         setLighting(context);
+      }
+      else {
+         shadedRGB = fillRGB;
+         smooth = false;
+      }
+   }
+   
+   /**
+       Calculates the shading of the surface from the lights of the context, measured
+       from the center of the surface in the world.
+   */
+   private void setLighting(RenderContext context) {
+      //with smooth shading the points of the surface are lit instead, and Java2D,
+      //which can't blend them, fills the surface with their average
+      if (context.isSmoothShading() && (meshSurface >= 0)) {
+         model.lightPoints(context, indices, start, numbPoints);
+         float[] light = model.getPointLight();
+         double sum = 0;
+         for (int i = start; i < start + numbPoints; i++) {
+            sum += light[indices[i]];
+         }
+         shadedRGB = Lighting.scale(fillRGB, sum / numbPoints);
+         smooth = true;
+         return;
+      }
+      smooth = false;
       
-      for (int i = 0; i < numbPoints; i++) {
-         sum.add(worldPoints[i]);
+      Mesh mesh = model.getDrawMesh();
+      double centerX, centerY, centerZ, normalX, normalY, normalZ;
+      if (meshSurface >= 0) {
+         centerX = mesh.getCentroidX()[meshSurface];
+         centerY = mesh.getCentroidY()[meshSurface];
+         centerZ = mesh.getCentroidZ()[meshSurface];
+         normalX = mesh.getNormalX()[meshSurface];
+         normalY = mesh.getNormalY()[meshSurface];
+         normalZ = mesh.getNormalZ()[meshSurface];
+      }
+      else {
+         double[] x = mesh.getPointX();
+         double[] y = mesh.getPointY();
+         double[] z = mesh.getPointZ();
+         centerX = 0;
+         centerY = 0;
+         centerZ = 0;
+         for (int i = start; i < start + numbPoints; i++) {
+            centerX += x[indices[i]];
+            centerY += y[indices[i]];
+            centerZ += z[indices[i]];
+         }
+         centerX /= numbPoints;
+         centerY /= numbPoints;
+         centerZ /= numbPoints;
+         Vector normal = getNormal();
+         normalX = normal.getXD();
+         normalY = normal.getYD();
+         normalZ = normal.getZD();
       }
       
-      Vector avg = sum.scale(1 / numbPoints);
+      double[] m = model.getWorldMatrix();
+      Vector position = model.getPosition();
+      double worldX = m[0] * centerX + m[1] * centerY + m[2] * centerZ + position.getXD();
+      double worldY = m[3] * centerX + m[4] * centerY + m[5] * centerZ + position.getYD();
+      double worldZ = m[6] * centerX + m[7] * centerY + m[8] * centerZ + position.getZD();
       
-      double lightingPercentage = 0;
+      double[] n = model.getNormalMatrix();
+      double worldNormalX = n[0] * normalX + n[1] * normalY + n[2] * normalZ;
+      double worldNormalY = n[3] * normalX + n[4] * normalY + n[5] * normalZ;
+      double worldNormalZ = n[6] * normalX + n[7] * normalY + n[8] * normalZ;
+      double length = Math.sqrt((worldNormalX * worldNormalX) + (worldNormalY * worldNormalY)
+                                + (worldNormalZ * worldNormalZ));
+      if (length > 0) {
+         worldNormalX /= length;
+         worldNormalY /= length;
+         worldNormalZ /= length;
+      }
       
-      for (int i = 0; i < numbLights; i++) {
-         Vector lightNormal = avg.subtract(lightSource[i]).normalize();
-         double dot = surfaceNormal.dot(lightNormal);
-         
-         if (-dot > 0) {
-            lightingPercentage += -dot;
+      shadedRGB = context.getLighting().shade(fillRGB, worldX, worldY, worldZ,
+                                              worldNormalX, worldNormalY, worldNormalZ);
+   }
+   
+   /**
+       Returns the normal of the surface in model coordinates. Surfaces of the mesh
+       use the normal found when it was loaded, others work it out from their
+       first three points.
+   */
+   private Vector getNormal() {
+      Mesh mesh = model.getDrawMesh();
+      if (meshSurface >= 0) {
+         return new Vector(mesh.getNormalX()[meshSurface], mesh.getNormalY()[meshSurface], mesh.getNormalZ()[meshSurface]);
+      }
+      Vector a = mesh.getPoint(indices[start]);
+      Vector b = mesh.getPoint(indices[start + 1]);
+      Vector c = mesh.getPoint(indices[start + 2]);
+      return b.subtract(a).cross(c.subtract(b)).normalize();
+   }
+   
+   /**
+       Returns whether the front of the surface might face the given point, in
+       model coordinates. Only surfaces that clearly face away return false, the
+       exact check is done on the screen coordinates by isVisible.
+   */
+   boolean facesPoint(double x, double y, double z) {
+      double normalX, normalY, normalZ, offset;
+      Mesh mesh = model.getDrawMesh();
+      if (meshSurface >= 0) {
+         normalX = mesh.getNormalX()[meshSurface];
+         normalY = mesh.getNormalY()[meshSurface];
+         normalZ = mesh.getNormalZ()[meshSurface];
+         offset = mesh.getPlaneOffset()[meshSurface];
+      }
+      else {
+         if (numbPoints < 3) {
+            return true;
          }
+         Vector normal = getNormal();
+         Vector b = mesh.getPoint(indices[start + 1]);
+         normalX = normal.getXD();
+         normalY = normal.getYD();
+         normalZ = normal.getZD();
+         offset = -normal.dot(b);
       }
       
-      if (lightingPercentage < 0) {
-         lightingPercentage = 0;
-      } 
-      else if (lightingPercentage > 1) {
-         lightingPercentage = 1;
+      //a surface faces the point when the point is on the side its normal points
+      //to. The small margin keeps surfaces seen almost edge on for the exact check.
+      double dx = normalX * x;
+      double dy = normalY * y;
+      double dz = normalZ * z;
+      double distance = dx + dy + dz + offset;
+      double margin = 1e-9 * (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) + Math.abs(offset));
+      return distance > -margin;
+   }
+   
+   /**
+       Sets the stamp of each point of the surface, marking them to be transformed.
+   */
+   void markPoints(int[] stamps, int stamp) {
+      for (int i = 0; i < numbPoints; i++) {
+         stamps[indices[start + i]] = stamp;
       }
-      
-      int red = (int)(fillColor.getRed() * lightingPercentage);
-      int green = (int)(fillColor.getGreen() * lightingPercentage);
-      int blue = (int)(fillColor.getBlue() * lightingPercentage);
-      
-      lightCorrectedFill = new Color(red, green, blue);
    }
    
-   public static void drawAll(Graphics2D g) {
-      //System.out.println(visibleSurfaces);
-      BufferedImage bufferedImage = new BufferedImage(cam.getWidth(), cam.getHeight(), BufferedImage.TYPE_INT_ARGB);
-      Graphics2D gbi = bufferedImage.createGraphics();
+   /**
+       Draws the draw stack of the context and empties it for the next frame.
+   */
+   public static void drawAll(RenderContext context, Graphics2D g) {
+      if (context.getRenderMode() == RenderContext.Z_BUFFER) {
+         rasterAll(context, g);
+         return;
+      }
+      else if (context.getRenderMode() == RenderContext.TILED) {
+         rasterTiled(context, g);
+         return;
+      }
+      
+      FrameProfiler profiler = context.getProfiler();
+      long time = profiler.start();
+      boolean wireframe = context.isWireframe();
+      DepthSorter drawStack = context.getDrawStack();
+      drawStack.sort();
+      time = profiler.lap(FrameProfiler.SORT, time);
+      Surface[] drawOrder = drawStack.getSurfaces();
+      int visibleSurfaces = drawStack.size();
+      
+      FrameBuffer frameBuffer = context.getFrameBuffer();
+      frameBuffer.clear();
+      Graphics2D gbi = frameBuffer.getGraphics();
       //gbi.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-      gbi.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER));
+      double[] bounds = new double[4];
       for (int i = 0; i < visibleSurfaces; i++) {
       //for (int i = visibleSurfaces - 1; i >= 0; i--) {
-         drawOrder[i].draw(gbi);
+         drawOrder[i].draw(gbi, wireframe);
+         drawOrder[i].getScreenBounds(bounds);
+         frameBuffer.addDrawnBounds(bounds);
       }
+      time = profiler.lap(FrameProfiler.RASTER, time);
       
-      g.drawImage(bufferedImage, null, 0, 0);
+      int[] drawn = new int[4];
+      boolean anyDrawn = frameBuffer.getDrawnBounds(drawn);
+      present(context, g, frameBuffer.getImage(), drawn, anyDrawn);
+      profiler.lap(FrameProfiler.PRESENT, time);
+      
+      context.endFrame();
+   }
+   
+   private static void rasterAll(RenderContext context, Graphics2D g) {
+      FrameProfiler profiler = context.getProfiler();
+      long time = profiler.start();
+      Rasterizer rasterizer = context.getRasterizer();
+      boolean wireframe = context.isWireframe();
+      DepthSorter drawStack = context.getDrawStack();
+      rasterizer.clear();
       
-      visibleSurfaces = 0;
+      Surface[] surfaces = drawStack.getSurfaces();
+      for (int i = 0; i < drawStack.size(); i++) {
+         surfaces[i].raster(rasterizer, wireframe);
+      }
+      time = profiler.lap(FrameProfiler.RASTER, time);
+      
+      int[] drawn = new int[4];
+      boolean anyDrawn = rasterizer.getDrawnBounds(drawn);
+      present(context, g, rasterizer.getImage(), drawn, anyDrawn);
+      profiler.lap(FrameProfiler.PRESENT, time);
+      
+      context.endFrame();
+   }
+   
+   private static void rasterTiled(RenderContext context, Graphics2D g) {
+      FrameProfiler profiler = context.getProfiler();
+      long time = profiler.start();
+      TiledRasterizer tiledRasterizer = context.getTiledRasterizer();
+      DepthSorter drawStack = context.getDrawStack();
+      tiledRasterizer.render(drawStack.getSurfaces(), drawStack.size(), context.isWireframe());
+      time = profiler.lap(FrameProfiler.RASTER, time);
+      
+      int[] drawn = new int[4];
+      boolean anyDrawn = tiledRasterizer.getDrawnBounds(drawn);
+      present(context, g, tiledRasterizer.getImage(), drawn, anyDrawn);
+      profiler.lap(FrameProfiler.PRESENT, time);
+      
+      context.endFrame();
+   }
+   
+   /**
+       Draws the part of the frame inside the given inclusive bounds onto the
+       graphics. The rest of the frame is transparent, so leaving it out doesn't
+       change what's drawn, as long as the graphics was filled with the
+       background first. When the context has a target background, the graphics
+       keeps the last frame, so the union of the part the last frame was drawn
+       over and the part this one is drawn over is filled with the background
+       here, which clears the last frame without filling the whole graphics.
+   */
+   private static void present(RenderContext context, Graphics2D g, BufferedImage image, int[] bounds,
+                               boolean anyDrawn) {
+      Color background = context.getTargetBackground();
+      if (background != null) {
+         int[] presented = context.getPresentedBounds();
+         if (anyDrawn && (presented[0] > presented[2])) {
+            System.arraycopy(bounds, 0, presented, 0, 4);
+         }
+         else if (anyDrawn) {
+            for (int i = 0; i < 2; i++) {
+               presented[i] = Math.min(presented[i], bounds[i]);
+               presented[i + 2] = Math.max(presented[i + 2], bounds[i + 2]);
+            }
+         }
+         if (presented[0] <= presented[2]) {
+            g.setColor(background);
+            g.fillRect(presented[0], presented[1], presented[2] - presented[0] + 1,
+                       presented[3] - presented[1] + 1);
+         }
+         if (anyDrawn) {
+            System.arraycopy(bounds, 0, presented, 0, 4);
+         }
+         else {
+            presented[0] = 0;
+            presented[1] = 0;
+            presented[2] = -1;
+            presented[3] = -1;
+         }
+      }
+      if (anyDrawn) {
+         g.drawImage(image, bounds[0], bounds[1], bounds[2] + 1, bounds[3] + 1,
+                     bounds[0], bounds[1], bounds[2] + 1, bounds[3] + 1, null);
+      }
    }
    
-   public void draw(Graphics2D g) {
+   /**
+       Stores the screen bounds of the surface as minimum x, minimum y,
+       maximum x and maximum y in the given array.
+   */
+   public void getScreenBounds(double[] bounds) {
+      double[] x = model.getTransformedX();
+      double[] y = model.getTransformedY();
+      bounds[0] = x[indices[start]];
+      bounds[1] = y[indices[start]];
+      bounds[2] = bounds[0];
+      bounds[3] = bounds[1];
+      for (int i = 1; i < numbPoints; i++) {
+         int index = indices[start + i];
+         bounds[0] = Math.min(bounds[0], x[index]);
+         bounds[1] = Math.min(bounds[1], y[index]);
+         bounds[2] = Math.max(bounds[2], x[index]);
+         bounds[3] = Math.max(bounds[3], y[index]);
+      }
+   }
+   
+   /**
+       Draws the surface with the given rasterizer.
+   */
+   public void raster(Rasterizer r, boolean wireframe) {
+      if (wireframe) {
+         r.drawPolygon(model.getTransformedX(), model.getTransformedY(), indices, start, numbPoints, 0xFF000000);
+      }
+      else if (triangles != null) {
+         if (smooth) {
+            r.fillTriangles(model.getTransformedX(), model.getTransformedY(), model.getTransformedZ(),
+                            triangles, firstTriangle, numbTriangles, fillRGB, model.getPointLight());
+         }
+         else {
+            r.fillTriangles(model.getTransformedX(), model.getTransformedY(), model.getTransformedZ(),
+                            triangles, firstTriangle, numbTriangles, shadedRGB);
+         }
+      }
+      else if (smooth) {
+         r.fillPolygon(model.getTransformedX(), model.getTransformedY(), model.getTransformedZ(),
+                       indices, start, numbPoints, fillRGB, model.getPointLight());
+      }
+      else {
+         r.fillPolygon(model.getTransformedX(), model.getTransformedY(), model.getTransformedZ(),
+                       indices, start, numbPoints, shadedRGB);
+      }
+   }
+   
+   public void draw(Graphics2D g, boolean wireframe) {
+      double[] x = model.getTransformedX();
+      double[] y = model.getTransformedY();
       Path2D p = new Path2D.Double();
       
-      p.moveTo(points[0].getXD(), points[0].getYD());
+      p.moveTo(x[indices[start]], y[indices[start]]);
       for (int i = 0; i < numbPoints; i++) {
-         p.lineTo(points[i].getXD(), points[i].getYD());
+         p.lineTo(x[indices[start + i]], y[indices[start + i]]);
       }
-      p.lineTo(points[0].getXD(), points[0].getYD());
+      p.lineTo(x[indices[start]], y[indices[start]]);
       
       if (!wireframe) {
-         g.setColor(lightCorrectedFill);
+         if ((shadedColor == null) || (shadedColor.getRGB() != shadedRGB)) {
+            shadedColor = new Color(shadedRGB);
+         }
+         g.setColor(shadedColor);
          g.fill(p);
       } 
       else {
@@ -232,29 +510,49 @@ public class Surface
       
    }
    
-   private boolean isVisible() {
-      
-      Vector line1 = points[1].subtract(points[0]);
-      
-      Vector line2 = points[2].subtract(points[1]);
-      
-      Vector surfaceNormal = line1.cross(line2).normalize();
+   private boolean isVisible(Camera cam, boolean wireframe) {
+      double[] x = model.getTransformedX();
+      double[] y = model.getTransformedY();
+      double[] z = model.getTransformedZ();
+      //the first triangle turns the same way as the surface even when its first
+      //three points don't
+      int a, b, c;
+      if (triangles != null) {
+         if (numbTriangles == 0) {
+            return false;
+         }
+         a = triangles[firstTriangle * 3];
+         b = triangles[firstTriangle * 3 + 1];
+         c = triangles[firstTriangle * 3 + 2];
+      }
+      else {
+         a = indices[start];
+         b = indices[start + 1];
+         c = indices[start + 2];
+      }
       
-      double dot = surfaceNormal.dot(new Vector(0, 0, 1));
+      //only the sign of the z component of the screen space normal is needed,
+      //so the cross product does not have to be normalized.
+      double line1X = x[b] - x[a];
+      double line1Y = y[b] - y[a];
+      double line2X = x[c] - x[b];
+      double line2Y = y[c] - y[b];
+      double dot = (line1X * line2Y) - (line1Y * line2X);
       boolean visible = false;
       double sum = 0;
       
       //long time = System.nanoTime();
       if (dot < 0 || wireframe) {
          for (int i = 0; i < numbPoints; i++) {
-            if ((points[i].getZ() >= 0) &&
-               (points[i].getX() > 0) &&
-               (points[i].getX() < cam.getWidth()) &&
-               (points[i].getY() > 0) &&
-               (points[i].getY() < cam.getHeight())) {
+            int index = indices[start + i];
+            if (((int)z[index] >= 0) &&
+               ((int)x[index] > 0) &&
+               ((int)x[index] < cam.getWidth()) &&
+               ((int)y[index] > 0) &&
+               ((int)y[index] < cam.getHeight())) {
                visible = true;
             }
-            sum += points[i].getZD();
+            sum += z[index];
          }
       }
       depth = sum / numbPoints;
@@ -268,4 +566,4 @@ public class Surface
       return visible;
    }
    
-}
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+    This class splits the screen into square tiles and rasterizes the tiles on
+    the worker pool. Each surface is first binned into every tile its screen
+    bounds overlap. Each worker then draws the surfaces of a tile into its own
+    tile sized color and depth buffers, and copies the finished tile into the
+    final image. Since the tiles don't overlap no locking is needed.
+    Only the part of a tile drawn this frame or the last one is copied, and
+    tiles that were empty in both frames are skipped.
+*/
+public class TiledRasterizer
+{
+   private BufferedImage image;
+   private int[] pixels;
+   private int width;
+   private int height;
+   private int tileSize;
+   private int tilesX;
+   private int tilesY;
+   private int[][] bins;
+   private int[] binCounts;
+   //bounds of what each tile copied into the image in the last frame and this
+   //one, inclusive and relative to the tile, empty when the minimum is larger
+   //than the maximum
+   private int[][] copiedBounds;
+   private int[][] drawnBounds;
+   private double[] bounds;
+   private double perspectivePoint;
+   private WorkerPool workerPool;
+   private ThreadLocal<Rasterizer> tileRasterizers;
+   
+   public static final int DEFAULT_TILE_SIZE = 64;
+   
+   public TiledRasterizer(int widthIn, int heightIn) {
+      this(widthIn, heightIn, DEFAULT_TILE_SIZE);
+   }
+   
+   public TiledRasterizer(int widthIn, int heightIn, int tileSizeIn) {
+      tileSize = tileSizeIn;
+      perspectivePoint = 500;
+      bounds = new double[4];
+      workerPool = WorkerPool.getShared();
+      tileRasterizers = new ThreadLocal<Rasterizer>() {
+         protected Rasterizer initialValue() {
+            return new Rasterizer(tileSize, tileSize);
+         }
+      };
+      setSize(widthIn, heightIn);
+   }
+   
+   /**
+       Resizes the image and the tile grid. Nothing is reallocated if the size
+       hasn't changed.
+   */
+   public void setSize(int widthIn, int heightIn) {
+      if ((image != null) && (widthIn == width) && (heightIn == height)) {
+         return;
+      }
+      width = widthIn;
+      height = heightIn;
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      tilesX = (width + tileSize - 1) / tileSize;
+      tilesY = (height + tileSize - 1) / tileSize;
+      bins = new int[tilesX * tilesY][16];
+      binCounts = new int[tilesX * tilesY];
+      copiedBounds = new int[tilesX * tilesY][4];
+      drawnBounds = new int[tilesX * tilesY][4];
+      for (int i = 0; i < copiedBounds.length; i++) {
+         copiedBounds[i][0] = tileSize;
+         copiedBounds[i][1] = tileSize;
+         copiedBounds[i][2] = -1;
+         copiedBounds[i][3] = -1;
+      }
+   }
+   
+   public void setPerspectivePoint(double distance) {
+      perspectivePoint = distance;
+   }
+   
+   /**
+       Sets the pool the tiles are rasterized on.
+   */
+   public void setWorkerPool(WorkerPool poolIn) {
+      workerPool = poolIn;
+   }
+   
+   public BufferedImage getImage() {
+      return image;
+   }
+   
+   /**
+       Draws the given surfaces into the image, replacing what was drawn before.
+       @param surfaces Surface[] surfaces to draw
+       @param count int number of surfaces in the array
+       @param wireframe boolean whether to draw outlines instead of filled surfaces
+   */
+   public void render(final Surface[] surfaces, int count, final boolean wireframe) {
+      bin(surfaces, count);
+      
+      workerPool.run(tilesX * tilesY, 1, new WorkerPool.RangeTask() {
+         public void run(int start, int end) {
+            Rasterizer r = tileRasterizers.get();
+            r.setPerspectivePoint(perspectivePoint);
+            for (int tile = start; tile < end; tile++) {
+               renderTile(r, tile, surfaces, wireframe);
+            }
+         }
+      });
+   }
+   
+   /**
+       Stores the bounds of the pixels drawn by the last render as minimum x,
+       minimum y, maximum x and maximum y, all inclusive, in the given array.
+       @return boolean false if nothing was drawn
+   */
+   public boolean getDrawnBounds(int[] bounds) {
+      bounds[0] = width;
+      bounds[1] = height;
+      bounds[2] = -1;
+      bounds[3] = -1;
+      for (int tile = 0; tile < copiedBounds.length; tile++) {
+         int[] tileBounds = copiedBounds[tile];
+         if (tileBounds[0] > tileBounds[2]) {
+            continue;
+         }
+         int tileX = (tile % tilesX) * tileSize;
+         int tileY = (tile / tilesX) * tileSize;
+         bounds[0] = Math.min(bounds[0], tileX + tileBounds[0]);
+         bounds[1] = Math.min(bounds[1], tileY + tileBounds[1]);
+         bounds[2] = Math.max(bounds[2], tileX + tileBounds[2]);
+         bounds[3] = Math.max(bounds[3], tileY + tileBounds[3]);
+      }
+      //the last tiles can reach past the edges of the image
+      bounds[2] = Math.min(bounds[2], width - 1);
+      bounds[3] = Math.min(bounds[3], height - 1);
+      return bounds[0] <= bounds[2];
+   }
+   
+   /**
+       Adds the index of each surface to the bin of every tile covered by the
+       screen bounds of the surface.
+   */
+   private void bin(Surface[] surfaces, int count) {
+      for (int i = 0; i < binCounts.length; i++) {
+         binCounts[i] = 0;
+      }
+      
+      for (int i = 0; i < count; i++) {
+         surfaces[i].getScreenBounds(bounds);
+         int minX = Math.max(0, (int)Math.floor(bounds[0]) / tileSize);
+         int minY = Math.max(0, (int)Math.floor(bounds[1]) / tileSize);
+         int maxX = Math.min(tilesX - 1, (int)Math.ceil(bounds[2]) / tileSize);
+         int maxY = Math.min(tilesY - 1, (int)Math.ceil(bounds[3]) / tileSize);
+         
+         for (int ty = minY; ty <= maxY; ty++) {
+            for (int tx = minX; tx <= maxX; tx++) {
+               int tile = (ty * tilesX) + tx;
+               if (binCounts[tile] == bins[tile].length) {
+                  int[] temp = bins[tile];
+                  bins[tile] = new int[temp.length * 2];
+                  System.arraycopy(temp, 0, bins[tile], 0, temp.length);
+               }
+               bins[tile][binCounts[tile]] = i;
+               binCounts[tile]++;
+            }
+         }
+      }
+   }
+   
+   private void renderTile(Rasterizer r, int tile, Surface[] surfaces, boolean wireframe) {
+      int tileX = (tile % tilesX) * tileSize;
+      int tileY = (tile / tilesX) * tileSize;
+      int[] bin = bins[tile];
+      int binCount = binCounts[tile];
+      int[] last = copiedBounds[tile];
+      int[] drawn = drawnBounds[tile];
+      if ((binCount == 0) && (last[0] > last[2])) {
+         return;
+      }
+      
+      r.setOrigin(tileX, tileY);
+      r.clear();
+      for (int i = 0; i < binCount; i++) {
+         surfaces[bin[i]].raster(r, wireframe);
+      }
+      r.getDrawnBounds(drawn);
+      
+      //copies the part of the tile drawn in this frame or the last one, the rest
+      //of the tile is clear in both the rasterizer and the image
+      int[] tilePixels = r.getPixels();
+      int minX = Math.min(last[0], drawn[0]);
+      int minY = Math.min(last[1], drawn[1]);
+      int maxX = Math.min(Math.max(last[2], drawn[2]), width - tileX - 1);
+      int maxY = Math.min(Math.max(last[3], drawn[3]), height - tileY - 1);
+      for (int j = minY; j <= maxY; j++) {
+         System.arraycopy(tilePixels, (j * tileSize) + minX, pixels, ((tileY + j) * width) + tileX + minX,
+                          maxX - minX + 1);
+      }
+      copiedBounds[tile] = drawn;
+      drawnBounds[tile] = last;
+   }
+}
@@ -0,0 +1,160 @@
+/**
+    This class splits the surfaces of a mesh into triangles when it's loaded.
+    Convex surfaces are split into a fan from their first point, the same
+    triangles the rasterizer used to fill them with. Other surfaces are split by
+    ear clipping in the plane they face, which cuts off one corner at a time
+    that has no other point of the surface inside it. Every surface of n points
+    becomes n - 2 triangles, listed in the same winding as the surface.
+*/
+public class Triangulator
+{
+   private Triangulator() {
+   }
+   
+   /**
+       Writes the triangles of a surface as three indices each into the given
+       array.
+       @param x double[] x coordinates of the points
+       @param y double[] y coordinates of the points
+       @param z double[] z coordinates of the points
+       @param indices int[] indices of the surface points
+       @param start int position of the first index of the surface
+       @param count int number of points of the surface
+       @param out int[] array the triangles are written to
+       @param position int position in out to write the first triangle at
+       @return int the position after the last triangle written
+   */
+   public static int triangulate(double[] x, double[] y, double[] z, int[] indices, int start, int count,
+                                 int[] out, int position) {
+      if (count < 3) {
+         return position;
+      }
+      
+      //the normal of the whole surface by Newell's method, which unlike the
+      //normal of three of its points is right for any surface
+      double normalX = 0;
+      double normalY = 0;
+      double normalZ = 0;
+      for (int i = 0; i < count; i++) {
+         int a = indices[start + i];
+         int b = indices[start + ((i + 1) % count)];
+         normalX += (y[a] - y[b]) * (z[a] + z[b]);
+         normalY += (z[a] - z[b]) * (x[a] + x[b]);
+         normalZ += (x[a] - x[b]) * (y[a] + y[b]);
+      }
+      
+      //the points are flattened by leaving out the axis the normal is closest
+      //to, and mirrored when the normal points down that axis, so the corners
+      //turning the same way as the surface have a positive cross product
+      double[] u = new double[count];
+      double[] v = new double[count];
+      double absX = Math.abs(normalX);
+      double absY = Math.abs(normalY);
+      double absZ = Math.abs(normalZ);
+      for (int i = 0; i < count; i++) {
+         int index = indices[start + i];
+         if ((absZ >= absX) && (absZ >= absY)) {
+            u[i] = x[index];
+            v[i] = (normalZ >= 0) ? y[index] : -y[index];
+         }
+         else if (absX >= absY) {
+            u[i] = y[index];
+            v[i] = (normalX >= 0) ? z[index] : -z[index];
+         }
+         else {
+            u[i] = z[index];
+            v[i] = (normalY >= 0) ? x[index] : -x[index];
+         }
+      }
+      
+      boolean convex = true;
+      for (int i = 0; (i < count) && convex; i++) {
+         convex = cross(u, v, (i + count - 1) % count, i, (i + 1) % count) >= 0;
+      }
+      if (convex) {
+         return fan(indices, start, count, out, position);
+      }
+      
+      //positions in the surface of the points not cut off yet
+      int[] remaining = new int[count];
+      for (int i = 0; i < count; i++) {
+         remaining[i] = i;
+      }
+      int numbRemaining = count;
+      int i = 0;
+      int checked = 0;
+      while (numbRemaining > 3) {
+         int prev = remaining[(i + numbRemaining - 1) % numbRemaining];
+         int current = remaining[i];
+         int next = remaining[(i + 1) % numbRemaining];
+         if (isEar(u, v, remaining, numbRemaining, prev, current, next)) {
+            out[position] = indices[start + prev];
+            out[position + 1] = indices[start + current];
+            out[position + 2] = indices[start + next];
+            position += 3;
+            numbRemaining--;
+            for (int j = i; j < numbRemaining; j++) {
+               remaining[j] = remaining[j + 1];
+            }
+            i = (i == 0) ? 0 : i - 1;
+            checked = 0;
+         }
+         else {
+            i = (i + 1) % numbRemaining;
+            checked++;
+            //no ear left means the surface crosses itself or isn't flat, so
+            //the rest of it is filled the way it always was
+            if (checked == numbRemaining) {
+               for (int j = 0; j < numbRemaining; j++) {
+                  remaining[j] = indices[start + remaining[j]];
+               }
+               return fan(remaining, 0, numbRemaining, out, position);
+            }
+         }
+      }
+      out[position] = indices[start + remaining[0]];
+      out[position + 1] = indices[start + remaining[1]];
+      out[position + 2] = indices[start + remaining[2]];
+      return position + 3;
+   }
+   
+   private static int fan(int[] indices, int start, int count, int[] out, int position) {
+      for (int i = 2; i < count; i++) {
+         out[position] = indices[start];
+         out[position + 1] = indices[start + i - 1];
+         out[position + 2] = indices[start + i];
+         position += 3;
+      }
+      return position;
+   }
+   
+   /**
+       Returns whether the corner at current turns the way of the surface and has
+       none of the other remaining points inside or on it.
+   */
+   private static boolean isEar(double[] u, double[] v, int[] remaining, int numbRemaining,
+                                int prev, int current, int next) {
+      if (cross(u, v, prev, current, next) <= 0) {
+         return false;
+      }
+      for (int i = 0; i < numbRemaining; i++) {
+         int p = remaining[i];
+         if ((p == prev) || (p == current) || (p == next)) {
+            continue;
+         }
+         if ((cross(u, v, prev, current, p) >= 0) && (cross(u, v, current, next, p) >= 0)
+             && (cross(u, v, next, prev, p) >= 0)) {
+            return false;
+         }
+      }
+      return true;
+   }
+   
+   /**
+       Returns the cross product of the edges from a to b and from b to c, which
+       is positive when the points turn counterclockwise.
+   */
+   private static double cross(double[] u, double[] v, int a, int b, int c) {
+      return ((u[b] - u[a]) * (v[c] - v[b])) - ((v[b] - v[a]) * (u[c] - u[b]));
+   }
+}
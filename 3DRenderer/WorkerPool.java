@@ -0,0 +1,145 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+    This class is a long lived pool of worker threads used to split per point
+    and per surface work between cores. Work is given as a range of indices which
+    is divided into contiguous chunks, so each thread walks through its own part
+    of the coordinate arrays. Ranges that are too small to be worth splitting
+    are run on the calling thread.
+*/
+public class WorkerPool
+{
+   private ForkJoinPool pool;
+   private int threadCount;
+   private int sequentialThreshold;
+   
+   private static WorkerPool shared = null;
+   
+   public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 4096;
+   
+   /**
+       Work done by the pool on a range of indices.
+   */
+   public interface RangeTask
+   {
+      /**
+          Processes the indices from start (inclusive) to end (exclusive).
+      */
+      void run(int start, int end);
+   }
+   
+   /**
+       Creates a pool with the given number of threads. A thread count of 1
+       runs all work on the calling thread.
+       @param threads int number of worker threads
+   */
+   public WorkerPool(int threads) {
+      threadCount = Math.max(1, threads);
+      sequentialThreshold = DEFAULT_SEQUENTIAL_THRESHOLD;
+      if (threadCount > 1) {
+         pool = new ForkJoinPool(threadCount);
+      }
+   }
+   
+   /**
+       Returns the pool shared by all models. The thread count can be set with
+       the renderer.threads system property and defaults to the number of
+       available processors.
+   */
+   public static synchronized WorkerPool getShared() {
+      if (shared == null) {
+         int threads = Integer.getInteger("renderer.threads", Runtime.getRuntime().availableProcessors());
+         shared = new WorkerPool(threads);
+      }
+      return shared;
+   }
+   
+   public int getThreadCount() {
+      return threadCount;
+   }
+   
+   /**
+       Sets the number of indices below which work is not split between threads.
+   */
+   public void setSequentialThreshold(int threshold) {
+      sequentialThreshold = Math.max(1, threshold);
+   }
+   
+   public int getSequentialThreshold() {
+      return sequentialThreshold;
+   }
+   
+   /**
+       Runs the task over the indices 0 to count and waits until all of them are done.
+       @param count int number of indices
+       @param task RangeTask work to perform on each chunk
+   */
+   public void run(int count, RangeTask task) {
+      if (count <= 0) {
+         return;
+      }
+      if ((pool == null) || (count < sequentialThreshold)) {
+         task.run(0, count);
+         return;
+      }
+      
+      //a few chunks per thread keeps the threads busy when some finish early,
+      //while each chunk stays large enough to stream through memory.
+      int chunkSize = Math.max(sequentialThreshold / 4, (count + (threadCount * 4) - 1) / (threadCount * 4));
+      pool.invoke(new RangeAction(task, 0, count, chunkSize));
+   }
+   
+   /**
+       Runs the task over the indices 0 to count in chunks of the given size,
+       even when count is below the sequential threshold. Used for work where
+       each index is already a large piece of work, like a screen tile.
+       @param count int number of indices
+       @param chunkSize int number of indices given to a thread at a time
+       @param task RangeTask work to perform on each chunk
+   */
+   public void run(int count, int chunkSize, RangeTask task) {
+      if (count <= 0) {
+         return;
+      }
+      if ((pool == null) || (count <= chunkSize)) {
+         task.run(0, count);
+         return;
+      }
+      pool.invoke(new RangeAction(task, 0, count, Math.max(1, chunkSize)));
+   }
+   
+   public void shutdown() {
+      if (pool != null) {
+         pool.shutdown();
+      }
+   }
+   
+   private static class RangeAction extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+      
+      private RangeTask task;
+      private int start;
+      private int end;
+      private int chunkSize;
+      
+      public RangeAction(RangeTask taskIn, int startIn, int endIn, int chunkSizeIn) {
+         task = taskIn;
+         start = startIn;
+         end = endIn;
+         chunkSize = chunkSizeIn;
+      }
+      
+      protected void compute() {
+         if (end - start <= chunkSize) {
+            task.run(start, end);
+         }
+         else {
+            int middle = start + ((end - start) / 2);
+            invokeAll(new RangeAction(task, start, middle, chunkSize),
+                      new RangeAction(task, middle, end, chunkSize));
+         }
+      }
+   }
+}
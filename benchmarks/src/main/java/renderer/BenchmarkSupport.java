@@ -0,0 +1,41 @@
+package renderer;
+
+import java.io.File;
+
+/**
+    Loads the meshes and sets up the camera and context shared by the benchmarks.
+    The directory of the mesh files is given by the renderer.input system
+    property and defaults to the input directory of the renderer sources.
+*/
+final class BenchmarkSupport
+{
+   static final int WIDTH = 800;
+   static final int HEIGHT = 500;
+   
+   private BenchmarkSupport() {
+   }
+   
+   static Camera createCamera() {
+      return OrbitScene.createCamera(WIDTH, HEIGHT);
+   }
+   
+   static RenderContext createContext(Camera cam) {
+      RenderContext context = new RenderContext(cam);
+      OrbitScene.addLights(context);
+      return context;
+   }
+   
+   /**
+       Loads the given mesh, failing the benchmark if it couldn't be read.
+   */
+   static Model loadModel(Camera cam, String mesh) {
+      String directory = System.getProperty("renderer.input", "../3DRenderer/input");
+      Model model = new Model(cam);
+      model.readFile(new File(directory, mesh).getPath());
+      if (model.getNumbPoints() == 0) {
+         throw new IllegalStateException("Could not load " + mesh + " from " + directory
+                                         + ", set -Drenderer.input to the mesh directory");
+      }
+      return model;
+   }
+}
@@ -0,0 +1,78 @@
+package renderer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks lighting the surfaces of a sphere with more and more ranged
+    lights spread around it, lighting each surface or each point. Each surface
+    or point only checks the lights near it, so the time should grow much slower
+    than the number of lights.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class LightingBenchmark
+{
+   @Param({"1", "10", "100", "1000"})
+   public int lights;
+   
+   @Param({"flat", "smooth"})
+   public String shading;
+   
+   private Camera cam;
+   private RenderContext context;
+   private Model model;
+   
+   @Setup
+   public void setup() {
+      cam = BenchmarkSupport.createCamera();
+      context = new RenderContext(cam);
+      context.setSmoothShading(shading.equals("smooth"));
+      model = BenchmarkSupport.loadModel(cam, "sphereGen3.dat");
+      model.performTransformations(cam);
+      
+      //the lights are put just outside of the sphere, and get smaller as there
+      //are more of them, so each part of the sphere is reached by about the same
+      //number of lights
+      Random random = new Random(42);
+      Vector center = model.getPosition();
+      double range = 400 / Math.sqrt(lights);
+      for (int i = 0; i < lights; i++) {
+         Vector direction = new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+         double distance = 200 + random.nextDouble() * range * 0.75;
+         context.addLightSource(center.add(direction.scale(distance)), range);
+      }
+   }
+   
+   /**
+       Adds every surface of the sphere to the draw stack, lighting the visible
+       ones, then ends the frame. The model is transformed first, which starts a
+       new frame, so smooth shading lights the points again.
+   */
+   @Benchmark
+   public int addToDrawStack() {
+      model.performTransformations(cam);
+      for (int i = 0; i < model.getNumbSurfaces(); i++) {
+         model.getSurface(i).addToDrawStack(context);
+      }
+      int visible = context.getDrawStack().size();
+      context.endFrame();
+      return visible;
+   }
+}
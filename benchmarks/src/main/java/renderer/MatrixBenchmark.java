@@ -0,0 +1,72 @@
+package renderer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks of the Matrix3x3 and Matrix4x4 operations used once per model per frame.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MatrixBenchmark
+{
+   private Matrix3x3 m1;
+   private Matrix3x3 m2;
+   private Matrix4x4 p1;
+   private Matrix4x4 p2;
+   private Vector v;
+   
+   @Setup
+   public void setup() {
+      m1 = new Matrix3x3(new Vector(17, 5, -9), new Vector(7, 5, 1), new Vector(-9, -4, 20));
+      m2 = new Matrix3x3(new Vector(5, -7, 6), new Vector(15, -1, -9), new Vector(4, 6, 13));
+      Camera cam = BenchmarkSupport.createCamera();
+      p1 = cam.getProjectionMatrix();
+      p2 = cam.getViewMatrix();
+      v = new Vector(100, -100, 50);
+   }
+   
+   @Benchmark
+   public Matrix3x3 multiplyMatrix() {
+      return m1.multiply(m2);
+   }
+   
+   @Benchmark
+   public Vector multiplyVector() {
+      return m1.multiply(v);
+   }
+   
+   @Benchmark
+   public Matrix3x3 invert() {
+      return m1.invert();
+   }
+   
+   @Benchmark
+   public Matrix3x3 transpose() {
+      return m1.getTranspose();
+   }
+   
+   @Benchmark
+   public Matrix4x4 multiplyMatrix4x4() {
+      return p1.multiply(p2);
+   }
+   
+   @Benchmark
+   public Vector transformPoint4x4() {
+      return p1.transformPoint(v);
+   }
+}
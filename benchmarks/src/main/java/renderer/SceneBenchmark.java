@@ -0,0 +1,86 @@
+package renderer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks finding the models in view with the bounding volume hierarchy of
+    Scene against testing the bounds of every model. The models share one mesh
+    and are spread at random around the camera, with the volume growing with the
+    number of models so about the same share of them is in view.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SceneBenchmark
+{
+   @Param({"1000", "10000", "100000"})
+   public int models;
+   
+   private Camera cam;
+   private Scene scene;
+   private Vector[] positions;
+   private Random random;
+   
+   @Setup
+   public void setup() {
+      cam = BenchmarkSupport.createCamera();
+      Mesh mesh = BenchmarkSupport.loadModel(cam, "rocket5.dat").getMesh();
+      random = new Random(42);
+      double spread = 4000 * Math.cbrt(models / 1000.0);
+      
+      scene = new Scene();
+      positions = new Vector[models];
+      for (int i = 0; i < models; i++) {
+         Model model = new Model(mesh);
+         positions[i] = new Vector((random.nextDouble() - 0.5) * spread,
+                                   (random.nextDouble() - 0.5) * spread,
+                                   (random.nextDouble() - 0.5) * spread);
+         model.setPosition(positions[i]);
+         model.scale(0.125);
+         scene.add(model);
+      }
+      scene.rebuild();
+   }
+   
+   @Benchmark
+   public int hierarchy() {
+      return scene.findVisible(cam);
+   }
+   
+   @Benchmark
+   public int bruteForce() {
+      return scene.findVisibleLinear(cam);
+   }
+   
+   /**
+       Moves one in a hundred models back and forth before the query, so the
+       boxes along their paths to the root are refit.
+   */
+   @Benchmark
+   public int refitAndQuery() {
+      for (int i = 0; i < models / 100; i++) {
+         int index = random.nextInt(models);
+         Vector position = positions[index];
+         scene.getModel(index).setPosition(new Vector(position.getXD() + random.nextGaussian(),
+                                                      position.getYD() + random.nextGaussian(),
+                                                      position.getZD()));
+      }
+      return scene.findVisible(cam);
+   }
+}
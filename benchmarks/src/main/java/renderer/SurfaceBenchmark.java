@@ -0,0 +1,105 @@
+package renderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks adding the surfaces of a mesh to the draw stack and drawing the
+    stack in each render mode. The points are transformed once during setup, so
+    only the surface work is measured.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SurfaceBenchmark
+{
+   @Param({"cube.dat", "sphere2.dat", "sphereGen2.dat", "sphereGen3.dat"})
+   public String mesh;
+   
+   @Param({"java2d", "zbuffer", "tiled"})
+   public String mode;
+   
+   private Camera cam;
+   private RenderContext context;
+   private Model model;
+   private BufferedImage image;
+   private Graphics2D graphics;
+   
+   @Setup(Level.Trial)
+   public void setup() {
+      cam = BenchmarkSupport.createCamera();
+      context = BenchmarkSupport.createContext(cam);
+      if (mode.equals("zbuffer")) {
+         context.setRenderMode(RenderContext.Z_BUFFER);
+      }
+      else if (mode.equals("tiled")) {
+         context.setRenderMode(RenderContext.TILED);
+      }
+      model = BenchmarkSupport.loadModel(cam, mesh);
+      model.addZRotation(30);
+      model.performTransformations(cam);
+      
+      image = new BufferedImage(BenchmarkSupport.WIDTH, BenchmarkSupport.HEIGHT, BufferedImage.TYPE_INT_RGB);
+      graphics = image.createGraphics();
+      graphics.setColor(Color.BLACK);
+   }
+   
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      graphics.dispose();
+   }
+   
+   /**
+       Adds every surface of the mesh to the draw stack, including the visibility
+       test and lighting, and then empties the stack again.
+   */
+   @Benchmark
+   public int addToDrawStack() {
+      for (int i = 0; i < model.getNumbSurfaces(); i++) {
+         model.getSurface(i).addToDrawStack(context);
+      }
+      int visible = context.getDrawStack().size();
+      context.endFrame();
+      return visible;
+   }
+   
+   @State(Scope.Thread)
+   public static class FilledStack
+   {
+      /**
+          Fills the draw stack before each call of drawAll, which empties it.
+      */
+      @Setup(Level.Invocation)
+      public void fill(SurfaceBenchmark benchmark) {
+         for (int i = 0; i < benchmark.model.getNumbSurfaces(); i++) {
+            benchmark.model.getSurface(i).addToDrawStack(benchmark.context);
+         }
+      }
+   }
+   
+   @Benchmark
+   public BufferedImage drawAll(FilledStack stack) {
+      graphics.fillRect(0, 0, BenchmarkSupport.WIDTH, BenchmarkSupport.HEIGHT);
+      Surface.drawAll(context, graphics);
+      return image;
+   }
+}
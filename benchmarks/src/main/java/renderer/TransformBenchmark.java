@@ -0,0 +1,66 @@
+package renderer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks Model.performTransformations for each of the bundled meshes.
+    The first benchmark adds a rotation every invocation, like a frame of the
+    orbit scene. The others leave the model alone, moving only the camera or
+    nothing, so the points are kept or only projected again.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TransformBenchmark
+{
+   @Param({"cube.dat", "sphere2.dat", "sphereGen2.dat", "sphereGen3.dat"})
+   public String mesh;
+   
+   private Camera cam;
+   private Model model;
+   private double angle;
+   
+   @Setup
+   public void setup() {
+      cam = BenchmarkSupport.createCamera();
+      model = BenchmarkSupport.loadModel(cam, mesh);
+      angle = 0;
+   }
+   
+   @Benchmark
+   public Model performTransformations() {
+      angle += 0.5;
+      model.addZRotation(angle);
+      model.performTransformations(cam);
+      return model;
+   }
+   
+   @Benchmark
+   public Model unchanged() {
+      model.performTransformations(cam);
+      return model;
+   }
+   
+   @Benchmark
+   public Model cameraMoved() {
+      angle += 0.5;
+      cam.setLocation(new Vector(0, 1000, 500 + angle % 10));
+      model.performTransformations(cam);
+      return model;
+   }
+}
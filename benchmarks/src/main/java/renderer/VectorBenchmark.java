@@ -0,0 +1,70 @@
+package renderer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+    Benchmarks of the basic Vector operations.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VectorBenchmark
+{
+   private Vector a;
+   private Vector b;
+   
+   @Setup
+   public void setup() {
+      a = new Vector(17.5, -5.25, 9.125);
+      b = new Vector(-7.75, 5.5, 1.0625);
+   }
+   
+   @Benchmark
+   public Vector add() {
+      return a.add(b);
+   }
+   
+   @Benchmark
+   public Vector subtract() {
+      return a.subtract(b);
+   }
+   
+   @Benchmark
+   public Vector scale() {
+      return a.scale(0.125);
+   }
+   
+   @Benchmark
+   public double dot() {
+      return a.dot(b);
+   }
+   
+   @Benchmark
+   public Vector cross() {
+      return a.cross(b);
+   }
+   
+   @Benchmark
+   public Vector normalize() {
+      return a.normalize();
+   }
+   
+   @Benchmark
+   public double magnitude() {
+      return a.magnitude();
+   }
+}